@@ -0,0 +1,141 @@
+package net.pointlessgames.libs.bps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.pointlessgames.libs.bps.data.ByteArrayDataReader;
+import net.pointlessgames.libs.bps.data.IDataReader;
+
+/**
+ * A {@link DeserializationContext} that reads from an array or a {@link ByteBuffer}. The most
+ * used primitives are decoded straight from the final {@link ByteArrayDataReader} instead
+ * of through the {@link net.pointlessgames.libs.bps.data.IDataReader} interface. Reads
+ * everything a {@link SerializationContext} writes.
+ */
+public final class ArrayDeserializationContext extends DeserializationContext {
+	private ByteArrayDataReader reader;
+
+	public ArrayDeserializationContext(byte[] data, IDeserializer<Object> objectDeserializer) {
+		this(new ByteArrayDataReader(data), objectDeserializer);
+	}
+
+	public ArrayDeserializationContext(byte[] data, int offset, int length, IDeserializer<Object> objectDeserializer) {
+		this(new ByteArrayDataReader(data, offset, length), objectDeserializer);
+	}
+
+	/**
+	 * Reads the remaining bytes of the buffer without changing its position. Heap buffers are
+	 * read in place; the content of direct buffers is copied into an array first.
+	 */
+	public ArrayDeserializationContext(ByteBuffer data, IDeserializer<Object> objectDeserializer) {
+		this(wrap(data), objectDeserializer);
+	}
+
+	private ArrayDeserializationContext(ByteArrayDataReader reader, IDeserializer<Object> objectDeserializer) {
+		super(reader, objectDeserializer);
+		this.reader = reader;
+	}
+
+	private static ByteArrayDataReader wrap(ByteBuffer data) {
+		if(data.hasArray()) {
+			return new ByteArrayDataReader(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		}
+		return new ByteArrayDataReader(copy(data));
+	}
+	
+	private static byte[] copy(ByteBuffer data) {
+		byte[] copy = new byte[data.remaining()];
+		data.duplicate().get(copy);
+		return copy;
+	}
+	
+	/**
+	 * Resets and continues reading from another array.
+	 */
+	public void reset(byte[] data) {
+		reset(data, 0, data.length);
+	}
+	
+	public void reset(byte[] data, int offset, int length) {
+		reset();
+		reader.reset(data, offset, length);
+	}
+	
+	/**
+	 * Resets and continues reading the remaining bytes of another buffer, like
+	 * {@link #ArrayDeserializationContext(ByteBuffer, IDeserializer)}.
+	 */
+	public void reset(ByteBuffer data) {
+		if(data.hasArray()) {
+			reset(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		} else {
+			reset(copy(data));
+		}
+	}
+	
+	/**
+	 * Resets and continues reading from another array.
+	 * 
+	 * @throws IllegalArgumentException if <code>in</code> is not a {@link ByteArrayDataReader},
+	 * since this context always reads from an array.
+	 */
+	@Override
+	public void reset(IDataReader in) {
+		if(!(in instanceof ByteArrayDataReader)) {
+			throw new IllegalArgumentException("ArrayDeserializationContext can only read from a ByteArrayDataReader");
+		}
+		super.reset(in);
+		reader = (ByteArrayDataReader) in;
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return reader.readFloat();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return reader.readVarInt();
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return reader.readBoolean();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return reader.readDouble();
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return reader.readByte();
+	}
+
+	@Override
+	public void readBytes(byte[] result, int offset, int length) throws IOException {
+		reader.readBytes(result, offset, length);
+	}
+
+	@Override
+	public int[] readIntArray() throws IOException {
+		int[] array = new int[reader.readVarInt()];
+		reader.readVarInts(array, 0, array.length);
+		return array;
+	}
+
+	@Override
+	public byte[] readByteArray() throws IOException {
+		byte[] array = new byte[reader.readVarInt()];
+		reader.readBytes(array, 0, array.length);
+		return array;
+	}
+
+	/**
+	 * @return the number of bytes left to read.
+	 */
+	public int remaining() {
+		return reader.remaining();
+	}
+}
@@ -2,12 +2,13 @@ package net.pointlessgames.libs.bps;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
+import net.pointlessgames.libs.bps.data.BufferedDataReader;
 import net.pointlessgames.libs.bps.data.IDataReader;
 import net.pointlessgames.libs.bps.data.InputStreamDataReader;
 import net.pointlessgames.libs.bps.extracontext.IDependentDeserializer;
@@ -16,74 +17,159 @@ import net.pointlessgames.libs.bps.functional.UnsafeConsumer;
 import net.pointlessgames.libs.bps.nested.IInnerType;
 import net.pointlessgames.libs.bps.nested.IOuterType;
 import net.pointlessgames.libs.bps.nested.InnerTypeMarker;
+import net.pointlessgames.libs.bps.strings.IStringCanonicalizer;
 
 public class DeserializationContext implements IDeserializationContext {
-	private final IDataReader in;
+	private IDataReader in;
 	private final IDeserializer<Object> objectDeserializer;
-	private final Map<Integer, Object> objectMap = new HashMap<Integer, Object>();
+	/** Indexed by object id; holds an {@link UnfinishedObject} while that object is being read. */
+	private Object[] objects = new Object[64];
+	private int objectCount = 0;
+	private int objectDepth = 0;
+	private boolean breadthFirstObjects = false;
+	private boolean compactObjectHeaders = false;
+	private int[] versionTable = null;
+	private int versionTableSize = 0;
+	/** The compact header of the new object whose id was read last. */
+	private int newObjectHeader = 0;
+	private int nextQueuedObjectId = -1;
+	private ReferenceFixups deferredFixups = null;
+	private List<String> strings = null;
+	private IStringCanonicalizer stringCanonicalizer = null;
+	private boolean compactPrimitives = false;
 	
 	public DeserializationContext(InputStream in, IDeserializer<Object> objectDeserializer) {
 		this(new InputStreamDataReader(in), objectDeserializer);
 	}
 	
+	/**
+	 * Reads through a {@link BufferedDataReader} with the given buffer size. Note that
+	 * the stream may be read beyond the end of the serialized data.
+	 */
+	public DeserializationContext(InputStream in, IDeserializer<Object> objectDeserializer, int bufferSize) {
+		this(new BufferedDataReader(in, bufferSize), objectDeserializer);
+	}
+	
 	public DeserializationContext(IDataReader in, IDeserializer<Object> objectDeserializer) {
 		this.in = in;
 		this.objectDeserializer = objectDeserializer;
 	}
+	
+	/**
+	 * Forgets every object and string read so far, keeping the allocated tables and all
+	 * settings. Must be called at the same points as {@link SerializationContext#reset()}.
+	 */
+	public void reset() {
+		Arrays.fill(objects, 0, objectCount, null);
+		objectCount = 0;
+		objectDepth = 0;
+		nextQueuedObjectId = -1;
+		if(strings != null) {
+			strings.clear();
+		}
+		if(deferredFixups != null) {
+			deferredFixups.clear();
+		}
+		versionTableSize = 0;
+	}
+	
+	/**
+	 * Resets and continues reading from a different {@link IDataReader}.
+	 */
+	public void reset(IDataReader in) {
+		reset();
+		this.in = in;
+	}
+	
+	/**
+	 * Reads strings written with {@link SerializationContext#setStringDeduplication(boolean)} enabled.
+	 * Must be set before the first string is read.
+	 */
+	public void setStringDeduplication(boolean enabled) {
+		strings = enabled ? new ArrayList<String>() : null;
+	}
+	
+	/**
+	 * Passes every string read through the canonicalizer, or disables that if <code>null</code>.
+	 * With string deduplication enabled, only the first occurrence of each string is passed.
+	 */
+	public void setStringCanonicalizer(IStringCanonicalizer stringCanonicalizer) {
+		this.stringCanonicalizer = stringCanonicalizer;
+	}
+	
+	/**
+	 * Reads longs, shorts and chars written with {@link SerializationContext#setCompactPrimitives(boolean)} enabled.
+	 */
+	public void setCompactPrimitives(boolean enabled) {
+		compactPrimitives = enabled;
+	}
+	
+	/**
+	 * With deferred linking, references to objects that are still being read are not
+	 * resolved when those objects finish, but all at once when the outermost object
+	 * being read finishes. Until then, the list and array slots of such references hold
+	 * <code>null</code> and their consumers are not called.
+	 */
+	public void setDeferredLinking(boolean enabled) {
+		deferredFixups = enabled ? new ReferenceFixups(256) : null;
+	}
+	
+	/**
+	 * Reads values written with {@link SerializationContext#setVersionTable(boolean)} enabled.
+	 */
+	public void setVersionTable(boolean enabled) {
+		versionTable = enabled ? new int[SerializationContext.MAX_VERSION_TABLE_SIZE] : null;
+		versionTableSize = 0;
+	}
+	
+	private int readVersion() throws IOException {
+		if(versionTable == null) {
+			return readInt();
+		}
+		int index = readInt();
+		if(index == -1) {
+			return readInt();
+		}
+		if(index >= 0 && index < versionTableSize) {
+			return versionTable[index];
+		}
+		if(index != versionTableSize || index == versionTable.length) {
+			throw new IOException("Invalid version table index "+index);
+		}
+		int version = readInt();
+		versionTable[versionTableSize++] = version;
+		return version;
+	}
+	
+	/**
+	 * Reads objects written with {@link SerializationContext#setCompactObjectHeaders(boolean)} enabled.
+	 */
+	public void setCompactObjectHeaders(boolean enabled) {
+		compactObjectHeaders = enabled;
+	}
+	
+	/**
+	 * Reads objects written with {@link SerializationContext#setBreadthFirstObjects(boolean)}
+	 * enabled. A reference to an object read within another object is then always resolved
+	 * later, once the referenced object has been read.
+	 */
+	public void setBreadthFirstObjects(boolean enabled) {
+		breadthFirstObjects = enabled;
+	}
+	
+	private String readCanonicalString() throws IOException {
+		String s = in.readUTF();
+		return stringCanonicalizer != null ? stringCanonicalizer.canonicalize(s) : s;
+	}
 
 	@Override
 	public float readFloat() throws IOException {
 		return in.readFloat();
 	}
 
-	private static int toInt(byte b) {
-		return 0b11111111 & (b + 512);
-	}
-
 	@Override
 	public int readInt() throws IOException {
-		byte b1 = readByte();
-		if((b1 & 0b10000000) == 0) {
-			// 7 bytes
-			int val = b1 & 0b00111111;
-			if((b1 & 0b01000000) != 0) {
-				val = 0b11111111111111111111111110000000 | b1;
-			}
-			return val;
-		} else if((b1 & 0b01000000) == 0) {
-			// 14 bytes
-			byte b2 = readByte();
-			int val = toInt(b2) | ((b1 & 0b00011111) << 8);
-			if((b1 & 0b00100000) != 0) {
-				val = 0b11111111111111111110000000000000 | val;
-			}
-			return val;
-		} else if((b1 & 0b00100000) == 0) {
-			// 21 bytes
-			byte b2 = readByte();
-			byte b3 = readByte();
-			int val = toInt(b3) | (toInt(b2) << 8) | ((b1 & 0b00001111) << 16);
-			if((b1 & 0b00010000) != 0) {
-				val = 0b11111111111100000000000000000000 | val;
-			}
-			return val;
-		} else if((b1 & 0b00010000) == 0) {
-			// 28 bytes
-			byte b2 = readByte();
-			byte b3 = readByte();
-			byte b4 = readByte();
-			int val = toInt(b4) | (toInt(b3) << 8) | (toInt(b2) << 16) | ((b1 & 0b00000111) << 24);
-			if((b1 & 0b00001000) != 0) {
-				val = 0b11111000000000000000000000000000 | val;
-			}
-			return val;
-		} else {
-			byte b2 = readByte();
-			byte b3 = readByte();
-			byte b4 = readByte();
-			byte b5 = readByte();
-			return toInt(b5) | (toInt(b4) << 8) | (toInt(b3) << 16) | (toInt(b2) << 24);
-		}
+		return in.readVarInt();
 	}
 
 	@Override
@@ -98,21 +184,42 @@ public class DeserializationContext implements IDeserializationContext {
 
 	@Override
 	public String readString() throws IOException {
-		return in.readUTF();
+		if(strings != null) {
+			int id = in.readVarInt();
+			if(id == strings.size()) {
+				//First time read
+				String s = readCanonicalString();
+				strings.add(s);
+				return s;
+			} else if(id < 0 || id > strings.size()) {
+				throw new IOException("Invalid string reference "+id);
+			}
+			return strings.get(id);
+		}
+		return readCanonicalString();
 	}
 
 	@Override
 	public short readShort() throws IOException {
+		if(compactPrimitives) {
+			return (short) in.readVarLong();
+		}
 		return in.readShort();
 	}
 
 	@Override
 	public long readLong() throws IOException {
+		if(compactPrimitives) {
+			return in.readVarLong();
+		}
 		return in.readLong();
 	}
 
 	@Override
 	public char readChar() throws IOException {
+		if(compactPrimitives) {
+			return (char) in.readVarLong();
+		}
 		return in.readChar();
 	}
 	
@@ -121,9 +228,73 @@ public class DeserializationContext implements IDeserializationContext {
 		return in.readByte();
 	}
 
+	@Override
+	public void readBytes(byte[] result, int offset, int length) throws IOException {
+		in.readBytes(result, offset, length);
+	}
+	
+	@Override
+	public float[] readFloatArray() throws IOException {
+		float[] array = new float[in.readVarInt()];
+		in.readFloats(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public int[] readIntArray() throws IOException {
+		int[] array = new int[in.readVarInt()];
+		in.readVarInts(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public boolean[] readBooleanArray() throws IOException {
+		boolean[] array = new boolean[in.readVarInt()];
+		in.readBooleans(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public double[] readDoubleArray() throws IOException {
+		double[] array = new double[in.readVarInt()];
+		in.readDoubles(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public short[] readShortArray() throws IOException {
+		short[] array = new short[in.readVarInt()];
+		in.readShorts(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public long[] readLongArray() throws IOException {
+		long[] array = new long[in.readVarInt()];
+		in.readLongs(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public char[] readCharArray() throws IOException {
+		char[] array = new char[in.readVarInt()];
+		in.readChars(array, 0, array.length);
+		return array;
+	}
+	
+	@Override
+	public byte[] readByteArray() throws IOException {
+		byte[] array = new byte[in.readVarInt()];
+		in.readBytes(array, 0, array.length);
+		return array;
+	}
+	
 	@Override
 	public <T> T read(IDeserializer<T> deserializer) throws IOException {
-		int serializerVersion = readInt();
+		return read(deserializer, readVersion());
+	}
+	
+	private <T> T read(IDeserializer<T> deserializer, int serializerVersion) throws IOException {
 		if(deserializer.getVersion() != serializerVersion) {
 			if(deserializer instanceof IMultiVersionDeserializer) {
 				@SuppressWarnings("unchecked")
@@ -139,7 +310,7 @@ public class DeserializationContext implements IDeserializationContext {
 	
 	@Override
 	public <T, C> T readDependent(IDependentDeserializer<T, C> deserializer, C extraContext) throws IOException {
-		int serializerVersion = readInt();
+		int serializerVersion = readVersion();
 		if(deserializer.getVersion() != serializerVersion) {
 			if(deserializer instanceof IMultiVersionDependentDeserializer) {
 				@SuppressWarnings("unchecked")
@@ -156,56 +327,234 @@ public class DeserializationContext implements IDeserializationContext {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> void readObject(Class<T> type, Consumer<T> consumer) throws IOException {
-		int id = readInt();
-		Object object = objectMap.get(id);
-		if(object == null && !objectMap.containsKey(id)) {
-			//First time read
-			UnfinishedObject<T> unfinishedObject = new UnfinishedObject<>();
-			objectMap.put(id, unfinishedObject);
-			object = read(objectDeserializer);
-			if(object == InnerTypeMarker.INSTANCE) {
-				readObject(IOuterType.class, new DeferredInnerTypeDeserialization<>(outer -> {
-					IInnerType inner = outer.deserializeInner(DeserializationContext.this);
-					objectMap.put(id, inner);
-					unfinishedObject.onFinished((T) inner);
-					consumer.accept((T) inner);
-				}));
+		int id = readObjectId();
+		Object object = readObjectOrPlaceholder(id);
+		if(object instanceof UnfinishedObject) {
+			addFixup(id, (UnfinishedObject) object, consumer, -1);
+		} else {
+			consumer.accept((T) object);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> IObjectReference<T> readObject(Class<T> type) throws IOException {
+		ObjectReference<T> reference = new ObjectReference<>();
+		int id = readObjectId();
+		Object object = readObjectOrPlaceholder(id);
+		if(object instanceof UnfinishedObject) {
+			addFixup(id, (UnfinishedObject) object, reference, -1);
+		} else {
+			reference.setValue((T) object);
+		}
+		return reference;
+	}
+	
+	@Override
+	public <T, L extends List<? super T>> L readList(IDeserializer<T> elementDeserializer, L list) throws IOException {
+		if(versionTable == null) {
+			return IDeserializationContext.super.readList(elementDeserializer, list);
+		}
+		int listSize = readInt();
+		int version = readVersion();
+		for(int i = 0; i < listSize; ++i) {
+			list.add(read(elementDeserializer, version));
+		}
+		return list;
+	}
+	
+	@Override
+	public <T> T[] readArray(IDeserializer<T> elementDeserializer, Class<T> componentType) throws IOException {
+		if(versionTable == null) {
+			return IDeserializationContext.super.readArray(elementDeserializer, componentType);
+		}
+		@SuppressWarnings("unchecked")
+		T[] array = (T[]) Array.newInstance(componentType, readInt());
+		int version = readVersion();
+		for(int i = 0; i < array.length; ++i) {
+			array[i] = read(elementDeserializer, version);
+		}
+		return array;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T, L extends List<? super T>> L readObjectList(Class<T> elementType, L list) throws IOException {
+		int listSize = readInt();
+		for(int i = 0; i < listSize; ++i) {
+			int index = list.size();
+			list.add(null);
+			int id = readObjectId();
+			Object object = readObjectOrPlaceholder(id);
+			if(object instanceof UnfinishedObject) {
+				addFixup(id, (UnfinishedObject) object, list, index);
 			} else {
-				objectMap.put(id, object);
-				unfinishedObject.onFinished((T) object);
-				consumer.accept((T) object);
+				list.set(index, (T) object);
 			}
-		} else if(object instanceof UnfinishedObject) {
-			if(consumer instanceof DeferredInnerTypeDeserialization) {
-				((UnfinishedObject<T>) object).deferredInnerTypeDeserializations.add((DeferredInnerTypeDeserialization<T>) consumer);
+		}
+		return list;
+	}
+	
+	@Override
+	public <T> T[] readObjectArray(Class<T> componentType) throws IOException {
+		@SuppressWarnings("unchecked")
+		T[] array = (T[]) Array.newInstance(componentType, readInt());
+		for(int i = 0; i < array.length; ++i) {
+			int id = readObjectId();
+			Object object = readObjectOrPlaceholder(id);
+			if(object instanceof UnfinishedObject) {
+				addFixup(id, (UnfinishedObject) object, array, i);
 			} else {
-				((UnfinishedObject<T>) object).consumers.add(consumer);
+				array[i] = componentType.cast(object);
 			}
+		}
+		return array;
+	}
+	
+	private int readObjectId() throws IOException {
+		if(!compactObjectHeaders) {
+			return readInt();
+		}
+		int header = readInt();
+		if((header & 1) != 0) {
+			return objectCount - 1 - (header >>> 1);
+		}
+		newObjectHeader = header;
+		return objectCount;
+	}
+	
+	/**
+	 * Reads the object with the given id if this is its first occurrence.
+	 * @return the object, or its {@link UnfinishedObject} if it is still being read.
+	 */
+	private Object readObjectOrPlaceholder(int id) throws IOException {
+		if(id == objectCount) {
+			//First time read
+			addObject(new UnfinishedObject(newObjectHeader));
+			if(nextQueuedObjectId >= 0) {
+				//Read later, in order of first occurrence
+				return objects[id];
+			}
+			objectDepth++;
+			if(breadthFirstObjects) {
+				readQueuedObjects(id);
+			} else {
+				readObjectBody(id);
+			}
+			objectDepth--;
+			if(objectDepth == 0 && deferredFixups != null && !deferredFixups.isEmpty()) {
+				deferredFixups.link(objects);
+			}
+			//Still the placeholder of an inner object if its outer object is unfinished
+			return objects[id];
+		} else if(id < 0 || id > objectCount) {
+			throw new IOException("Invalid object reference "+id);
+		}
+		return objects[id];
+	}
+	
+	private void readQueuedObjects(int firstId) throws IOException {
+		nextQueuedObjectId = firstId;
+		while(nextQueuedObjectId < objectCount) {
+			readObjectBody(nextQueuedObjectId++);
+		}
+		nextQueuedObjectId = -1;
+	}
+	
+	private void readObjectBody(int id) throws IOException {
+		UnfinishedObject unfinishedObject = (UnfinishedObject) objects[id];
+		Object object = compactObjectHeaders ? readCompactBody(unfinishedObject.header) : read(objectDeserializer);
+		if(object == InnerTypeMarker.INSTANCE) {
+			readOuterObject(outer -> {
+				IInnerType inner = outer.deserializeInner(DeserializationContext.this);
+				objects[id] = inner;
+				unfinishedObject.onFinished(inner);
+			});
 		} else {
-			consumer.accept((T) object);
+			objects[id] = object;
+			unfinishedObject.onFinished(object);
+		}
+	}
+	
+	private Object readCompactBody(int header) throws IOException {
+		int version = (header & 2) != 0 ? readInt() : 0;
+		if(objectDeserializer instanceof TypeRegistry) {
+			TypeRegistry registry = (TypeRegistry) objectDeserializer;
+			TypeRegistry.Entry entry = registry.getEntry(header >> 2);
+			return registry.checkDeserialized(entry, read(entry.serializer, version));
+		}
+		return read(objectDeserializer, version);
+	}
+	
+	private void readOuterObject(UnsafeConsumer<IOuterType, IOException> innerTypeDeserialization) throws IOException {
+		Object outer = readObjectOrPlaceholder(readObjectId());
+		if(outer instanceof UnfinishedObject) {
+			((UnfinishedObject) outer).addInnerTypeDeserialization(innerTypeDeserialization);
+		} else {
+			innerTypeDeserialization.accept((IOuterType) outer);
+		}
+	}
+	
+	private void addFixup(int id, UnfinishedObject unfinishedObject, Object target, int index) {
+		if(deferredFixups != null) {
+			deferredFixups.add(id, target, index);
+		} else {
+			unfinishedObject.addFixup(target, index);
+		}
+	}
+	
+	private void addObject(Object object) {
+		if(objectCount == objects.length) {
+			objects = Arrays.copyOf(objects, objectCount * 2);
 		}
+		objects[objectCount++] = object;
 	}
 	
-	private static class UnfinishedObject<T> {
-		private final List<DeferredInnerTypeDeserialization<T>> deferredInnerTypeDeserializations = new ArrayList<DeferredInnerTypeDeserialization<T>>();
-		private final List<Consumer<T>> consumers = new ArrayList<Consumer<T>>();
+	/**
+	 * Placeholder for an object that is still being read. Collects what has to happen
+	 * once it is finished; both are only allocated when needed.
+	 */
+	private static class UnfinishedObject {
+		private final int header;
+		private List<UnsafeConsumer<IOuterType, IOException>> innerTypeDeserializations = null;
+		private ReferenceFixups fixups = null;
+		
+		public UnfinishedObject(int header) {
+			this.header = header;
+		}
+		
+		public void addInnerTypeDeserialization(UnsafeConsumer<IOuterType, IOException> innerTypeDeserialization) {
+			if(innerTypeDeserializations == null) {
+				innerTypeDeserializations = new ArrayList<>(2);
+			}
+			innerTypeDeserializations.add(innerTypeDeserialization);
+		}
+		
+		public void addFixup(Object target, int index) {
+			if(fixups == null) {
+				fixups = new ReferenceFixups(4);
+			}
+			fixups.add(-1, target, index);
+		}
 
-		public void onFinished(T object) {
+		public void onFinished(Object object) {
 			RuntimeException exception = null;
-			for(DeferredInnerTypeDeserialization<T> innerTypeDeserialization : deferredInnerTypeDeserializations) {
-				try {
-					innerTypeDeserialization.onOuterType((IOuterType) object);
-				} catch(IOException e) {
-					if(exception == null) {
-						exception = new RuntimeException(e);
-					} else {
-						exception.addSuppressed(e);
+			if(innerTypeDeserializations != null) {
+				for(UnsafeConsumer<IOuterType, IOException> innerTypeDeserialization : innerTypeDeserializations) {
+					try {
+						innerTypeDeserialization.accept((IOuterType) object);
+					} catch(IOException e) {
+						if(exception == null) {
+							exception = new RuntimeException(e);
+						} else {
+							exception.addSuppressed(e);
+						}
 					}
 				}
 			}
-			for(Consumer<T> consumer : consumers) {
+			if(fixups != null) {
 				try {
-					consumer.accept(object);
+					fixups.resolve(object);
 				} catch(RuntimeException e) {
 					if(exception == null) {
 						exception = e;
@@ -219,25 +568,4 @@ public class DeserializationContext implements IDeserializationContext {
 			}
 		}
 	}
-	
-	private static class DeferredInnerTypeDeserialization<T> implements Consumer<T> {
-		private final UnsafeConsumer<IOuterType, IOException> wrappedConsumer;
-
-		public DeferredInnerTypeDeserialization(UnsafeConsumer<IOuterType, IOException> wrappedConsumer) {
-			this.wrappedConsumer = wrappedConsumer;
-		}
-
-		@Override
-		public void accept(T t) {
-			try {
-				onOuterType((IOuterType) t);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-		}
-
-		public void onOuterType(IOuterType object) throws IOException {
-			wrappedConsumer.accept(object);
-		}
-	}
 }
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 
+import net.pointlessgames.libs.bps.data.IntegerArrayCodec;
 import net.pointlessgames.libs.bps.extracontext.IDependentDeserializer;
 
 public interface IDeserializationContext {
@@ -22,6 +23,12 @@ public interface IDeserializationContext {
 	<T> void readObject(Class<T> type, Consumer<T> consumer) throws IOException;
 	<T, C> T readDependent(IDependentDeserializer<T, C> deserializer, C extraContext) throws IOException;
 	
+	default void readBytes(byte[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readByte();
+		}
+	}
+	
 	default <T, L extends List<? super T>> L readObjectList(Class<T> elementType, L list) throws IOException {
 		int listSize = readInt();
 		for(int i = 0; i < listSize; ++i) {
@@ -80,6 +87,28 @@ public interface IDeserializationContext {
 		return array;
 	}
 
+	default int[] readCompressedIntArray() throws IOException {
+		int length = readInt();
+		int encodedLength = readInt();
+		if(encodedLength < 0) {
+			throw new IOException("Invalid encoded integer array length "+encodedLength);
+		}
+		byte[] encoded = new byte[encodedLength];
+		readBytes(encoded, 0, encodedLength);
+		return IntegerArrayCodec.decodeInts(encoded, length);
+	}
+
+	default long[] readCompressedLongArray() throws IOException {
+		int length = readInt();
+		int encodedLength = readInt();
+		if(encodedLength < 0) {
+			throw new IOException("Invalid encoded integer array length "+encodedLength);
+		}
+		byte[] encoded = new byte[encodedLength];
+		readBytes(encoded, 0, encodedLength);
+		return IntegerArrayCodec.decodeLongs(encoded, length);
+	}
+
 	default boolean[] readBooleanArray() throws IOException {
 		boolean[] array = new boolean[readInt()];
 		for(int i = 0; i < array.length; ++i) {
@@ -88,6 +117,18 @@ public interface IDeserializationContext {
 		return array;
 	}
 
+	default boolean[] readPackedBooleanArray() throws IOException {
+		boolean[] array = new boolean[readInt()];
+		for(int i = 0; i < array.length; i += 8) {
+			int packed = readByte();
+			int end = Math.min(i + 8, array.length);
+			for(int j = i; j < end; ++j) {
+				array[j] = (packed & (1 << (j - i))) != 0;
+			}
+		}
+		return array;
+	}
+
 	default double[] readDoubleArray() throws IOException {
 		double[] array = new double[readInt()];
 		for(int i = 0; i < array.length; ++i) {
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
+import net.pointlessgames.libs.bps.data.IntegerArrayCodec;
 import net.pointlessgames.libs.bps.extracontext.IDependentSerializer;
 
 public interface ISerializationContext {
@@ -20,6 +21,15 @@ public interface ISerializationContext {
 	void writeObject(Object object) throws IOException;
 	<T> void writeDependent(IDependentSerializer<T, ?> serializer, T object) throws IOException;
 	
+	/**
+	 * Writes the bytes as they are, without a length.
+	 */
+	default void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeByte(bytes[i]);
+		}
+	}
+	
 	default void writeObjectList(List<? extends Object> list) throws IOException {
 		writeInt(list.size());
 		for(Object object : list) {
@@ -62,6 +72,26 @@ public interface ISerializationContext {
 		}
 	}
 	
+	/**
+	 * Writes the array with the {@link IntegerArrayCodec} encoding that is smallest for its values.
+	 */
+	default void writeCompressedIntArray(int[] array) throws IOException {
+		writeInt(array.length);
+		byte[] encoded = IntegerArrayCodec.encode(array);
+		writeInt(encoded.length);
+		writeBytes(encoded, 0, encoded.length);
+	}
+	
+	/**
+	 * Writes the array with the {@link IntegerArrayCodec} encoding that is smallest for its values.
+	 */
+	default void writeCompressedLongArray(long[] array) throws IOException {
+		writeInt(array.length);
+		byte[] encoded = IntegerArrayCodec.encode(array);
+		writeInt(encoded.length);
+		writeBytes(encoded, 0, encoded.length);
+	}
+	
 	default void writeBooleanArray(boolean[] array) throws IOException {
 		writeInt(array.length);
 		for(boolean val : array) {
@@ -69,6 +99,23 @@ public interface ISerializationContext {
 		}
 	}
 	
+	/**
+	 * Writes the array with eight booleans per byte, the first one in the lowest bit.
+	 */
+	default void writePackedBooleanArray(boolean[] array) throws IOException {
+		writeInt(array.length);
+		for(int i = 0; i < array.length; i += 8) {
+			int packed = 0;
+			int end = Math.min(i + 8, array.length);
+			for(int j = i; j < end; ++j) {
+				if(array[j]) {
+					packed |= 1 << (j - i);
+				}
+			}
+			writeByte((byte) packed);
+		}
+	}
+	
 	default void writeDoubleArray(double[] array) throws IOException {
 		writeInt(array.length);
 		for(double val : array) {
@@ -0,0 +1,112 @@
+package net.pointlessgames.libs.bps;
+
+import java.util.Arrays;
+
+/**
+ * Maps objects, by identity, to their serialization id and whether they are still
+ * being serialized. Open addressing with linear probing; ids are stored unboxed
+ * with the in-progress flag in their lowest bit. Does not accept <code>null</code>.
+ */
+/*package-protected*/ class IdentityObjectTable {
+	private static final int IN_PROGRESS = 1;
+	private static final int ABSENT = -1;
+
+	private Object[] keys;
+	private int[] entries;
+	private int size = 0;
+
+	public IdentityObjectTable() {
+		this(64);
+	}
+
+	public IdentityObjectTable(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(4, initialCapacity - 1)) << 1;
+		keys = new Object[capacity];
+		entries = new int[capacity];
+	}
+
+	private static int hash(Object key, int mask) {
+		// Spreads the identity hash so the low bits used for indexing depend on all of them
+		int h = System.identityHashCode(key) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private int indexOf(Object key) {
+		final Object[] keys = this.keys;
+		final int mask = keys.length - 1;
+		int index = hash(key, mask);
+		Object candidate;
+		while((candidate = keys[index]) != null) {
+			if(candidate == key) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return ~index;
+	}
+
+	/**
+	 * @return the id of the object, or -1 if it has none yet.
+	 */
+	public int getId(Object key) {
+		int index = indexOf(key);
+		return index >= 0 ? entries[index] >>> 1 : ABSENT;
+	}
+
+	public boolean isInProgress(Object key) {
+		int index = indexOf(key);
+		return index >= 0 && (entries[index] & IN_PROGRESS) != 0;
+	}
+
+	/**
+	 * Assigns an id to an object that does not have one yet and marks it as in progress.
+	 */
+	public void add(Object key, int id) {
+		if((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		int index = indexOf(key);
+		if(index >= 0) {
+			throw new IllegalStateException("Object already has id "+(entries[index] >>> 1));
+		}
+		keys[~index] = key;
+		entries[~index] = (id << 1) | IN_PROGRESS;
+		size++;
+	}
+
+	public void finish(Object key) {
+		int index = indexOf(key);
+		if(index >= 0) {
+			entries[index] &= ~IN_PROGRESS;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Removes all objects, keeping the allocated capacity.
+	 */
+	public void clear() {
+		if(size > 0) {
+			Arrays.fill(keys, null);
+			size = 0;
+		}
+	}
+
+	private void rehash(int capacity) {
+		Object[] oldKeys = keys;
+		int[] oldEntries = entries;
+		keys = new Object[capacity];
+		entries = new int[capacity];
+		for(int i = 0; i < oldKeys.length; ++i) {
+			Object key = oldKeys[i];
+			if(key != null) {
+				int index = ~indexOf(key);
+				keys[index] = key;
+				entries[index] = oldEntries[i];
+			}
+		}
+	}
+}
@@ -7,7 +7,7 @@ import java.util.function.Consumer;
 public class ObjectReference<T> implements IObjectReference<T> {
 	private T value;
 	private boolean hasValue = false;
-	private List<Consumer<T>> waiting = new ArrayList<Consumer<T>>(0);
+	private List<Consumer<T>> waiting = null;
 
 	public void setValue(T value) {
 		if(hasValue) {
@@ -15,7 +15,7 @@ public class ObjectReference<T> implements IObjectReference<T> {
 		}
 		this.value = value;
 		this.hasValue = true;
-		if(!waiting.isEmpty()) {
+		if(waiting != null) {
 			for(Consumer<T> consumer : waiting) {
 				consumer.accept(value);
 			}
@@ -28,6 +28,9 @@ public class ObjectReference<T> implements IObjectReference<T> {
 		if(hasValue) {
 			consumer.accept(value);
 		} else {
+			if(waiting == null) {
+				waiting = new ArrayList<Consumer<T>>(1);
+			}
 			waiting.add(consumer);
 		}
 	}
@@ -0,0 +1,80 @@
+package net.pointlessgames.libs.bps;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Presence flags for a fixed number of optional fields, written together in
+ * ceil(fieldCount / 8) bytes instead of one boolean per field. The field count
+ * is not written; the serializer knows it, just like it knows its fields.
+ * <pre>
+ * PresenceBitmap presence = new PresenceBitmap(2).set(0, name).set(1, owner);
+ * presence.write(context);
+ * if(name.isPresent()) context.writeString(name.get());
+ * ...
+ * PresenceBitmap presence = PresenceBitmap.read(context, 2);
+ * Optional&lt;String&gt; name = presence.get(0) ? Optional.of(context.readString()) : Optional.empty();
+ * </pre>
+ */
+public class PresenceBitmap {
+	private final int fieldCount;
+	private final byte[] bits;
+
+	public PresenceBitmap(int fieldCount) {
+		if(fieldCount < 0) {
+			throw new IllegalArgumentException("Field count must not be negative (was "+fieldCount+")");
+		}
+		this.fieldCount = fieldCount;
+		this.bits = new byte[(fieldCount + 7) / 8];
+	}
+
+	public static PresenceBitmap read(IDeserializationContext context, int fieldCount) throws IOException {
+		PresenceBitmap bitmap = new PresenceBitmap(fieldCount);
+		for(int i = 0; i < bitmap.bits.length; ++i) {
+			bitmap.bits[i] = context.readByte();
+		}
+		return bitmap;
+	}
+
+	public void write(ISerializationContext context) throws IOException {
+		for(byte b : bits) {
+			context.writeByte(b);
+		}
+	}
+
+	public PresenceBitmap set(int field, boolean present) {
+		checkField(field);
+		if(present) {
+			bits[field >> 3] |= 1 << (field & 7);
+		} else {
+			bits[field >> 3] &= ~(1 << (field & 7));
+		}
+		return this;
+	}
+
+	public PresenceBitmap set(int field, Optional<?> value) {
+		return set(field, value.isPresent());
+	}
+
+	/**
+	 * Marks the field as present if the value is not <code>null</code>.
+	 */
+	public PresenceBitmap setNonNull(int field, Object value) {
+		return set(field, value != null);
+	}
+
+	public boolean get(int field) {
+		checkField(field);
+		return (bits[field >> 3] & (1 << (field & 7))) != 0;
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	private void checkField(int field) {
+		if(field < 0 || field >= fieldCount) {
+			throw new IndexOutOfBoundsException("Field "+field+" out of range for "+fieldCount+" fields");
+		}
+	}
+}
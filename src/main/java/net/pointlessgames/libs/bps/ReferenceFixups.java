@@ -0,0 +1,93 @@
+package net.pointlessgames.libs.bps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * References to objects that were not finished when they were read, kept in parallel
+ * arrays instead of a callback per reference. A target is a list or array with the index
+ * to store into, or an {@link ObjectReference} or {@link Consumer} with index -1.
+ */
+/*package-protected*/ class ReferenceFixups {
+	private int[] ids;
+	private Object[] targets;
+	private int[] indices;
+	private int size = 0;
+	
+	public ReferenceFixups(int initialCapacity) {
+		ids = new int[initialCapacity];
+		targets = new Object[initialCapacity];
+		indices = new int[initialCapacity];
+	}
+	
+	public void add(int id, Object target, int index) {
+		if(size == targets.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+			targets = Arrays.copyOf(targets, size * 2);
+			indices = Arrays.copyOf(indices, size * 2);
+		}
+		ids[size] = id;
+		targets[size] = target;
+		indices[size] = index;
+		size++;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		Arrays.fill(targets, 0, size, null);
+		size = 0;
+	}
+	
+	/**
+	 * Stores every referenced object, looked up by id, into its target and empties the table.
+	 */
+	public void link(Object[] objects) {
+		assignAll(objects, null);
+	}
+	
+	/**
+	 * Stores the object into every target, ignoring the ids, and empties the table.
+	 */
+	public void resolve(Object object) {
+		assignAll(null, object);
+	}
+	
+	private void assignAll(Object[] objects, Object object) {
+		RuntimeException exception = null;
+		for(int i = 0; i < size; ++i) {
+			try {
+				assign(targets[i], indices[i], objects != null ? objects[ids[i]] : object);
+			} catch(RuntimeException e) {
+				if(exception == null) {
+					exception = e;
+				} else {
+					exception.addSuppressed(e);
+				}
+			}
+			targets[i] = null;
+		}
+		size = 0;
+		if(exception != null) {
+			throw exception;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static void assign(Object target, int index, Object value) {
+		if(index >= 0) {
+			if(target instanceof Object[]) {
+				((Object[]) target)[index] = value;
+			} else {
+				((List<Object>) target).set(index, value);
+			}
+		} else if(target instanceof ObjectReference) {
+			((ObjectReference<Object>) target).setValue(value);
+		} else {
+			((Consumer<Object>) target).accept(value);
+		}
+	}
+}
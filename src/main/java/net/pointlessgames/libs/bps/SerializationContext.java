@@ -4,13 +4,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import net.pointlessgames.libs.bps.data.BufferedDataWriter;
 import net.pointlessgames.libs.bps.data.IDataWriter;
-import net.pointlessgames.libs.bps.data.OutputStreamDataWriter;
+import net.pointlessgames.libs.bps.data.IntegerArrayCodec;
 import net.pointlessgames.libs.bps.extracontext.IDependentSerializer;
 import net.pointlessgames.libs.bps.functional.UnsafeConsumer;
 import net.pointlessgames.libs.bps.nested.IInnerType;
@@ -18,15 +18,28 @@ import net.pointlessgames.libs.bps.nested.IOuterType;
 import net.pointlessgames.libs.bps.nested.InnerTypeMarker;
 
 public class SerializationContext implements ISerializationContext {
-	private final IDataWriter out;
+	/**
+	 * The most versions {@link #setVersionTable(boolean)} keeps per stream.
+	 */
+	public static final int MAX_VERSION_TABLE_SIZE = 64;
+	
+	private IDataWriter out;
 	private final ISerializer<Object> objectSerializer;
-	private final Map<Object, Integer> objectMap = new HashMap<Object, Integer>();
-	private final Set<Object> objectsInMidSerialization = new HashSet<>();
-	private final Map<IOuterType, List<UnsafeConsumer<IOuterType, IOException>>> deferredInnerTypeSerializations = new HashMap<>();
+	private final IdentityObjectTable objectIds = new IdentityObjectTable();
+	private final Map<IOuterType, List<UnsafeConsumer<IOuterType, IOException>>> deferredInnerTypeSerializations = new IdentityHashMap<>();
 	private int nextId = 0;
+	private int nullId = -1;
+	private Map<String, Integer> stringMap = null;
+	private boolean compactPrimitives = false;
+	private boolean compactObjectHeaders = false;
+	private int[] versionTable = null;
+	private int versionTableSize = 0;
+	private List<Object> objectQueue = null;
+	private List<ISerializer<Object>> objectQueueSerializers = null;
+	private int objectQueueHead = 0;
 	
 	public SerializationContext(OutputStream stream, ISerializer<Object> objectSerializer) {
-		this(new OutputStreamDataWriter(stream), objectSerializer);
+		this(new BufferedDataWriter(stream), objectSerializer);
 	}
 	
 	public SerializationContext(IDataWriter out, ISerializer<Object> objectSerializer) {
@@ -34,6 +47,122 @@ public class SerializationContext implements ISerializationContext {
 		this.objectSerializer = objectSerializer;
 	}
 	
+	/**
+	 * Pushes everything written so far through to the underlying {@link IDataWriter}.
+	 * A buffered writer, like the one {@link #SerializationContext(OutputStream, ISerializer)}
+	 * uses, only hands data to its stream when its buffer fills, so call this before
+	 * reading or closing the stream.
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/**
+	 * Forgets every object and string written so far, so the next ones are written in full
+	 * again, while keeping the allocated tables and all settings. Meant for writing one
+	 * independent message after another; the {@link DeserializationContext} reading them
+	 * must be reset at the same points.
+	 */
+	public void reset() {
+		objectIds.clear();
+		deferredInnerTypeSerializations.clear();
+		nextId = 0;
+		nullId = -1;
+		if(stringMap != null) {
+			stringMap.clear();
+		}
+		if(objectQueue != null) {
+			objectQueue.clear();
+			objectQueueSerializers.clear();
+			objectQueueHead = 0;
+		}
+		versionTableSize = 0;
+	}
+	
+	/**
+	 * Resets and continues writing to a different {@link IDataWriter}. Nothing is flushed
+	 * to the previous one.
+	 */
+	public void reset(IDataWriter out) {
+		reset();
+		this.out = out;
+	}
+	
+	/**
+	 * When enabled, every string is written in full only the first time. Later occurrences
+	 * are written as the id of the first one. The {@link DeserializationContext} must be
+	 * set up the same way, and this must be set before the first string is written.
+	 */
+	public void setStringDeduplication(boolean enabled) {
+		stringMap = enabled ? new HashMap<String, Integer>() : null;
+	}
+	
+	/**
+	 * When enabled, longs, shorts and chars are written as ZigZag encoded varints instead
+	 * of fixed width, like ints already are. The {@link DeserializationContext} must be set
+	 * up the same way; streams written without this must be read without it.
+	 */
+	public void setCompactPrimitives(boolean enabled) {
+		compactPrimitives = enabled;
+	}
+	
+	/**
+	 * When enabled, every version is written as an index into a per-stream table of the
+	 * distinct versions seen so far, and only its first occurrence also writes the version
+	 * itself. The table holds at most {@value #MAX_VERSION_TABLE_SIZE} versions, so every
+	 * index takes a single byte; further versions are written in full. In addition,
+	 * {@link #writeList(ISerializer, List)} and {@link #writeArray(ISerializer, Object[])}
+	 * write the version of their element serializer once instead of before every element.
+	 * The {@link DeserializationContext} must be set up the same way.
+	 */
+	public void setVersionTable(boolean enabled) {
+		versionTable = enabled ? new int[MAX_VERSION_TABLE_SIZE] : null;
+		versionTableSize = 0;
+	}
+	
+	private void writeVersion(int version) throws IOException {
+		if(versionTable == null) {
+			writeInt(version);
+			return;
+		}
+		for(int i = 0; i < versionTableSize; ++i) {
+			if(versionTable[i] == version) {
+				writeInt(i);
+				return;
+			}
+		}
+		if(versionTableSize < versionTable.length) {
+			versionTable[versionTableSize] = version;
+			writeInt(versionTableSize++);
+		} else {
+			writeInt(-1);
+		}
+		writeInt(version);
+	}
+	
+	/**
+	 * When enabled, each object reference is written as a single header. A new object's
+	 * header holds its type id and whether its serializer version differs from 0. A repeated
+	 * object's header holds how many objects back it was first written. The type id is only
+	 * part of the header when the object serializer is a {@link TypeRegistry}. The
+	 * {@link DeserializationContext} must be set up the same way.
+	 */
+	public void setCompactObjectHeaders(boolean enabled) {
+		compactObjectHeaders = enabled;
+	}
+	
+	/**
+	 * When enabled, an object referenced while another object is being written is not
+	 * written in place. It is queued and written after the outermost object instead, in
+	 * order of first occurrence. The stack then no longer grows with the depth of the
+	 * object graph. The {@link DeserializationContext} must be set up the same way.
+	 */
+	public void setBreadthFirstObjects(boolean enabled) {
+		objectQueue = enabled ? new ArrayList<Object>() : null;
+		objectQueueSerializers = enabled ? new ArrayList<ISerializer<Object>>() : null;
+		objectQueueHead = 0;
+	}
+	
 	@Override
 	public void writeFloat(float f) throws IOException {
 		out.writeFloat(f);
@@ -41,27 +170,7 @@ public class SerializationContext implements ISerializationContext {
 	
 	@Override
 	public void writeInt(int i) throws IOException {
-		if(i <= 63 && i >= -64) {
-			writeByte((byte) (i & 0b01111111));
-		} else if(i <= 8191 && i >= -8192) {
-			writeByte((byte) (((i >> 8) & 0b00111111) | 0b10000000));
-			writeByte((byte) i);
-		} else if(i <= 1048575 && i >= -1048576) {
-			writeByte((byte) (((i >> (2*8)) & 0b00011111) | 0b11000000));
-			writeByte((byte) (i >> 8));
-			writeByte((byte) i);
-		} else if(i <= 134217727 && i >= -134217728) {
-			writeByte((byte) (((i >> (3*8)) & 0b00001111) | 0b11100000));
-			writeByte((byte) (i >> (2*8)));
-			writeByte((byte) (i >> 8));
-			writeByte((byte) i);
-		} else {
-			writeByte((byte) (0b11110000));
-			writeByte((byte) (i >> (3*8)));
-			writeByte((byte) (i >> (2*8)));
-			writeByte((byte) (i >> 8));
-			writeByte((byte) i);
-		}
+		out.writeVarInt(i);
 	}
 	
 	@Override
@@ -76,22 +185,47 @@ public class SerializationContext implements ISerializationContext {
 
 	@Override
 	public void writeString(String s) throws IOException {
-		out.writeUTF(s);
+		if(stringMap != null) {
+			Integer id = stringMap.get(s);
+			if(id == null) {
+				//First time
+				id = stringMap.size();
+				stringMap.put(s, id);
+				out.writeVarInt(id);
+				out.writeUTF(s);
+			} else {
+				out.writeVarInt(id);
+			}
+		} else {
+			out.writeUTF(s);
+		}
 	}
 
 	@Override
 	public void writeShort(short s) throws IOException {
-		out.writeShort(s);
+		if(compactPrimitives) {
+			out.writeVarLong(s);
+		} else {
+			out.writeShort(s);
+		}
 	}
 
 	@Override
 	public void writeLong(long l) throws IOException {
-		out.writeLong(l);
+		if(compactPrimitives) {
+			out.writeVarLong(l);
+		} else {
+			out.writeLong(l);
+		}
 	}
 
 	@Override
 	public void writeChar(char c) throws IOException {
-		out.writeChar(c);
+		if(compactPrimitives) {
+			out.writeVarLong(c);
+		} else {
+			out.writeChar(c);
+		}
 	}
 
 	@Override
@@ -99,56 +233,225 @@ public class SerializationContext implements ISerializationContext {
 		out.writeByte(b);
 	}
 
+	@Override
+	public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		out.writeBytes(bytes, offset, length);
+	}
+	
+	@Override
+	public void writeCompressedIntArray(int[] array) throws IOException {
+		byte[] encoded = IntegerArrayCodec.encode(array);
+		out.writeVarInt(array.length);
+		out.writeVarInt(encoded.length);
+		out.writeBytes(encoded, 0, encoded.length);
+	}
+	
+	@Override
+	public void writeCompressedLongArray(long[] array) throws IOException {
+		byte[] encoded = IntegerArrayCodec.encode(array);
+		out.writeVarInt(array.length);
+		out.writeVarInt(encoded.length);
+		out.writeBytes(encoded, 0, encoded.length);
+	}
+	
+	@Override
+	public void writeFloatArray(float[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeFloats(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeIntArray(int[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeVarInts(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeBooleanArray(boolean[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeBooleans(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeDoubleArray(double[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeDoubles(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeShortArray(short[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeShorts(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeLongArray(long[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeLongs(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeCharArray(char[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeChars(array, 0, array.length);
+	}
+	
+	@Override
+	public void writeByteArray(byte[] array) throws IOException {
+		out.writeVarInt(array.length);
+		out.writeBytes(array, 0, array.length);
+	}
+	
+	@Override
+	public <T> void writeList(ISerializer<T> elementSerializer, List<T> list) throws IOException {
+		if(versionTable == null) {
+			ISerializationContext.super.writeList(elementSerializer, list);
+			return;
+		}
+		writeInt(list.size());
+		writeVersion(elementSerializer.getVersion());
+		for(T element : list) {
+			elementSerializer.serialize(this, element);
+		}
+	}
+	
+	@Override
+	public <T> void writeArray(ISerializer<T> elementSerializer, T[] array) throws IOException {
+		if(versionTable == null) {
+			ISerializationContext.super.writeArray(elementSerializer, array);
+			return;
+		}
+		writeInt(array.length);
+		writeVersion(elementSerializer.getVersion());
+		for(T element : array) {
+			elementSerializer.serialize(this, element);
+		}
+	}
+	
 	@Override
 	public <T> void write(ISerializer<T> serializer, T object) throws IOException {
-		writeInt(serializer.getVersion());
+		writeVersion(serializer.getVersion());
 		serializer.serialize(this, object);
 	}
 	
 	@Override
 	public <T> void writeDependent(IDependentSerializer<T, ?> serializer, T object) throws IOException {
-		writeInt(serializer.getVersion());
+		writeVersion(serializer.getVersion());
 		serializer.serialize(this, object);
 	}
 	
 	@Override
 	public void writeObject(Object object) throws IOException {
-		Integer id = objectMap.get(object);
-		if(id == null) {
+		int id = object != null ? objectIds.getId(object) : nullId;
+		if(id < 0) {
 			//First time
 			id = nextId++;
-			objectMap.put(object, id);
-			writeInt(id);
-			objectsInMidSerialization.add(object);
-			if(object instanceof IInnerType) {
-				IOuterType outerType = ((IInnerType) object).getOuterObject();
-				write(objectSerializer, InnerTypeMarker.INSTANCE);
-				writeObject(outerType);
-				if(objectsInMidSerialization.contains(outerType)) {
-						List<UnsafeConsumer<IOuterType, IOException>> outerFinishedListeners = deferredInnerTypeSerializations.get(outerType);
-						if(outerFinishedListeners == null) {
-							outerFinishedListeners = new ArrayList<UnsafeConsumer<IOuterType,IOException>>();
-							deferredInnerTypeSerializations.put(outerType, outerFinishedListeners);
-						}
-						outerFinishedListeners.add(outer -> { 
-							outer.serializeInner(this, (IInnerType) object);
-						});
-				} else {
-					outerType.serializeInner(this, (IInnerType) object);
-				}
+			if(object != null) {
+				objectIds.add(object, id);
 			} else {
-				write(objectSerializer, object);
+				nullId = id;
 			}
-			objectsInMidSerialization.remove(object);
-			List<UnsafeConsumer<IOuterType, IOException>> onFinishedListeners = deferredInnerTypeSerializations.remove(object);
-			if(onFinishedListeners != null) {
-				IOuterType outer = (IOuterType) object;
-				for(UnsafeConsumer<IOuterType, IOException> onFinishedListener : onFinishedListeners) {
-					onFinishedListener.accept(outer);
+			ISerializer<Object> serializer = null;
+			if(compactObjectHeaders) {
+				serializer = writeCompactHeader(object);
+			} else {
+				writeInt(id);
+			}
+			if(objectQueue == null) {
+				writeObjectBody(object, serializer);
+			} else {
+				objectQueue.add(object);
+				objectQueueSerializers.add(serializer);
+				if(objectQueue.size() == 1) {
+					writeQueuedObjects();
 				}
 			}
 		} else {
-			writeInt(id);
+			writeInt(compactObjectHeaders ? (nextId - 1 - id) << 1 | 1 : id);
+		}
+	}
+	
+	private static Object typedObject(Object object) {
+		return object instanceof IInnerType ? InnerTypeMarker.INSTANCE : object;
+	}
+	
+	/**
+	 * @return the serializer the header was written for, which then writes the body.
+	 */
+	@SuppressWarnings("unchecked")
+	private ISerializer<Object> writeCompactHeader(Object object) throws IOException {
+		ISerializer<Object> serializer = objectSerializer;
+		int typeId = 0;
+		if(objectSerializer instanceof TypeRegistry) {
+			TypeRegistry.Entry entry = ((TypeRegistry) objectSerializer).getEntryOf(typedObject(object));
+			serializer = (ISerializer<Object>) entry.serializer;
+			typeId = entry.id;
+			if(typeId < -(1 << 29) || typeId >= 1 << 29) {
+				throw new IllegalArgumentException("Type id "+typeId+" is too large for compact object headers");
+			}
+		}
+		writeInt(typeId << 2 | (serializer.getVersion() != 0 ? 2 : 0));
+		return serializer;
+	}
+	
+	private void writeCompactBody(ISerializer<Object> serializer, Object typedObject) throws IOException {
+		int version = serializer.getVersion();
+		if(version != 0) {
+			writeInt(version);
+		}
+		serializer.serialize(this, typedObject);
+	}
+	
+	private void writeQueuedObjects() throws IOException {
+		while(objectQueueHead < objectQueue.size()) {
+			Object object = objectQueue.set(objectQueueHead, null);
+			ISerializer<Object> serializer = objectQueueSerializers.set(objectQueueHead++, null);
+			writeObjectBody(object, serializer);
+		}
+		objectQueue.clear();
+		objectQueueSerializers.clear();
+		objectQueueHead = 0;
+	}
+	
+	/**
+	 * @param serializer the serializer resolved by {@link #writeCompactHeader(Object)}, or
+	 * <code>null</code> without compact object headers.
+	 */
+	private void writeObjectBody(Object object, ISerializer<Object> serializer) throws IOException {
+		if(object instanceof IInnerType) {
+			IOuterType outerType = ((IInnerType) object).getOuterObject();
+			if(compactObjectHeaders) {
+				writeCompactBody(serializer, InnerTypeMarker.INSTANCE);
+			} else {
+				write(objectSerializer, InnerTypeMarker.INSTANCE);
+			}
+			writeObject(outerType);
+			if(objectIds.isInProgress(outerType)) {
+					List<UnsafeConsumer<IOuterType, IOException>> outerFinishedListeners = deferredInnerTypeSerializations.get(outerType);
+					if(outerFinishedListeners == null) {
+						outerFinishedListeners = new ArrayList<UnsafeConsumer<IOuterType,IOException>>();
+						deferredInnerTypeSerializations.put(outerType, outerFinishedListeners);
+					}
+					outerFinishedListeners.add(outer -> { 
+						outer.serializeInner(this, (IInnerType) object);
+					});
+			} else {
+				outerType.serializeInner(this, (IInnerType) object);
+			}
+		} else if(compactObjectHeaders) {
+			writeCompactBody(serializer, object);
+		} else {
+			write(objectSerializer, object);
+		}
+		if(object != null) {
+			objectIds.finish(object);
+		}
+		List<UnsafeConsumer<IOuterType, IOException>> onFinishedListeners = deferredInnerTypeSerializations.remove(object);
+		if(onFinishedListeners != null) {
+			IOuterType outer = (IOuterType) object;
+			for(UnsafeConsumer<IOuterType, IOException> onFinishedListener : onFinishedListeners) {
+				onFinishedListener.accept(outer);
+			}
 		}
 	}
 }
@@ -7,6 +7,8 @@ import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import net.pointlessgames.libs.bps.data.XorFloatingPointCodec;
+
 public class Serializers {
 	public static final ISerializer<Integer> INT = new ISerializer<Integer>() {
 		@Override
@@ -138,6 +140,22 @@ public class Serializers {
 	};
 
 
+	/**
+	 * Like {@link #INT_ARRAY}, but picks the smallest of several encodings per array.
+	 */
+	public static final ISerializer<int[]> COMPRESSED_INT_ARRAY = new ISerializer<int[]>() {
+		@Override
+		public int[] deserialize(IDeserializationContext context) throws IOException {
+			return context.readCompressedIntArray();
+		}
+		
+		@Override
+		public void serialize(ISerializationContext context, int[] object) throws IOException {
+			context.writeCompressedIntArray(object);
+		}
+	};
+
+
 	public static final ISerializer<byte[]> BYTE_ARRAY = new ISerializer<byte[]>() {
 		@Override
 		public byte[] deserialize(IDeserializationContext context) throws IOException {
@@ -177,6 +195,22 @@ public class Serializers {
 	};
 
 
+	/**
+	 * Like {@link #LONG_ARRAY}, but picks the smallest of several encodings per array.
+	 */
+	public static final ISerializer<long[]> COMPRESSED_LONG_ARRAY = new ISerializer<long[]>() {
+		@Override
+		public long[] deserialize(IDeserializationContext context) throws IOException {
+			return context.readCompressedLongArray();
+		}
+		
+		@Override
+		public void serialize(ISerializationContext context, long[] object) throws IOException {
+			context.writeCompressedLongArray(object);
+		}
+	};
+
+
 	public static final ISerializer<float[]> FLOAT_ARRAY = new ISerializer<float[]>() {
 		@Override
 		public float[] deserialize(IDeserializationContext context) throws IOException {
@@ -203,6 +237,60 @@ public class Serializers {
 	};
 
 
+	/**
+	 * Like {@link #FLOAT_ARRAY}, but each value is stored as the XOR with the previous one,
+	 * which is much smaller for slowly changing series. See {@link XorFloatingPointCodec}.
+	 */
+	public static final ISerializer<float[]> XOR_FLOAT_ARRAY = new ISerializer<float[]>() {
+		@Override
+		public float[] deserialize(IDeserializationContext context) throws IOException {
+			int length = context.readInt();
+			int encodedLength = context.readInt();
+			if(encodedLength < 0) {
+				throw new IOException("Invalid encoded floating point array length "+encodedLength);
+			}
+			byte[] encoded = new byte[encodedLength];
+			context.readBytes(encoded, 0, encodedLength);
+			return XorFloatingPointCodec.decodeFloats(encoded, length);
+		}
+		
+		@Override
+		public void serialize(ISerializationContext context, float[] object) throws IOException {
+			byte[] encoded = XorFloatingPointCodec.encode(object);
+			context.writeInt(object.length);
+			context.writeInt(encoded.length);
+			context.writeBytes(encoded, 0, encoded.length);
+		}
+	};
+
+
+	/**
+	 * Like {@link #DOUBLE_ARRAY}, but each value is stored as the XOR with the previous one,
+	 * which is much smaller for slowly changing series. See {@link XorFloatingPointCodec}.
+	 */
+	public static final ISerializer<double[]> XOR_DOUBLE_ARRAY = new ISerializer<double[]>() {
+		@Override
+		public double[] deserialize(IDeserializationContext context) throws IOException {
+			int length = context.readInt();
+			int encodedLength = context.readInt();
+			if(encodedLength < 0) {
+				throw new IOException("Invalid encoded floating point array length "+encodedLength);
+			}
+			byte[] encoded = new byte[encodedLength];
+			context.readBytes(encoded, 0, encodedLength);
+			return XorFloatingPointCodec.decodeDoubles(encoded, length);
+		}
+		
+		@Override
+		public void serialize(ISerializationContext context, double[] object) throws IOException {
+			byte[] encoded = XorFloatingPointCodec.encode(object);
+			context.writeInt(object.length);
+			context.writeInt(encoded.length);
+			context.writeBytes(encoded, 0, encoded.length);
+		}
+	};
+
+
 	public static final ISerializer<boolean[]> BOOLEAN_ARRAY = new ISerializer<boolean[]>() {
 		@Override
 		public boolean[] deserialize(IDeserializationContext context) throws IOException {
@@ -216,6 +304,22 @@ public class Serializers {
 	};
 
 
+	/**
+	 * Like {@link #BOOLEAN_ARRAY}, but with eight booleans per byte.
+	 */
+	public static final ISerializer<boolean[]> PACKED_BOOLEAN_ARRAY = new ISerializer<boolean[]>() {
+		@Override
+		public boolean[] deserialize(IDeserializationContext context) throws IOException {
+			return context.readPackedBooleanArray();
+		}
+		
+		@Override
+		public void serialize(ISerializationContext context, boolean[] object) throws IOException {
+			context.writePackedBooleanArray(object);
+		}
+	};
+
+
 	public static final ISerializer<char[]> CHAR_ARRAY = new ISerializer<char[]>() {
 		@Override
 		public char[] deserialize(IDeserializationContext context) throws IOException {
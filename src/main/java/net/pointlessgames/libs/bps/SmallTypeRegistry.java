@@ -1,98 +1,100 @@
 package net.pointlessgames.libs.bps;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.Consumer;
 
-import net.pointlessgames.libs.bps.functional.HashMapPairing;
-import net.pointlessgames.libs.bps.functional.IPairing;
+import net.pointlessgames.libs.bps.extracontext.IDependentDeserializer;
+import net.pointlessgames.libs.bps.extracontext.IDependentSerializer;
+import net.pointlessgames.libs.bps.extracontext.IMultiVersionDependentDeserializer;
+import net.pointlessgames.libs.bps.nested.InnerTypeRegistry;
 
+/**
+ * Writes the same byte ids as an {@link InnerTypeRegistry} without an outer object, and is
+ * built on one so both share its type table.
+ */
 public class SmallTypeRegistry<S> implements ISerializer<S> {
-	private final Map<Class<? extends S>, ISerializer<? extends S>> typeSerializers = new HashMap<>();
-	private final IPairing<Byte, Class<? extends S>> classIds = new HashMapPairing<>();
+	private final InnerTypeRegistry<S, Object> types = new InnerTypeRegistry<>();
 
 	public void registerNull(int id) {
-		assertInRange(id);
-		typeSerializers.put(null, new ISerializer<S>() {
-			@Override
-			public S deserialize(IDeserializationContext context) throws IOException {
-				return null;
-			}
-
-			@Override
-			public void serialize(ISerializationContext context, S object) throws IOException {
-			}
-		});
-		classIds.add((byte) id, null);
+		types.registerNull(id);
 	}
 
 	public <T extends S> void register(int id, Class<T> type, ISerializer<T> serializer) {
-		assertInRange(id);
 		if(type == null) {
 			throw new NullPointerException("type is null");
 		}
 		if(serializer == null) {
 			throw new NullPointerException("serializer is null");
 		}
-		typeSerializers.put(type, serializer);
-		classIds.add((byte) id, type);
+		types.register(id, type, new Independent<>(serializer));
 	}
 
-	private void assertInRange(int id) {
-		if (id < 0 || id > 255) {
-			throw new IllegalArgumentException("Ids must be in range [0, 255] (was " + id + ")");
-		}
+	/**
+	 * Makes this registry immutable. Reads never lock, so a frozen registry can be shared
+	 * by any number of threads. Until then, registrations may be made at any time.
+	 * @return this registry
+	 */
+	public SmallTypeRegistry<S> freeze() {
+		types.freeze();
+		return this;
+	}
+
+	public boolean isFrozen() {
+		return types.isFrozen();
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public void serialize(ISerializationContext context, S object) throws IOException {
-		Class<? extends S> type = (Class<? extends S>) (object != null ? object.getClass() : null);
-		ISerializer serializer = getSerializer(type);
-		context.writeByte(getId(type));
-		context.write(serializer, object);
+		types.serialize(context, object);
 	}
 
 	@Override
 	public S deserialize(IDeserializationContext context) throws IOException {
-		Class<? extends S> type = getType(context.readByte());
-		ISerializer<? extends S> serializer = getSerializer(type);
-		return context.read(serializer);
+		return types.deserialize(context, null);
 	}
 
-	@SuppressWarnings("unchecked")
-	private <T extends S> ISerializer<T> getSerializer(Class<T> type) {
-		ISerializer<T> serializer = (ISerializer<T>) typeSerializers.get(type);
-		if(serializer == null) {
-			throw new IllegalArgumentException("No serializer registered for type "+(type == null ? "nullType" : type.getName()));
-		}
-		return serializer;
+	public static <T> ISerializer<T> configure(Consumer<SmallTypeRegistry<T>> configuration) {
+		SmallTypeRegistry<T> registry = new SmallTypeRegistry<>();
+		configuration.accept(registry);
+		return registry;
 	}
 
-	private byte getId(Class<? extends S> type) {
-		Byte id = classIds.getBySecond(type);
-		if(id == null) {
-			throw new IllegalArgumentException("Type "+type.getName()+" not registered");
+	/**
+	 * Lets a plain serializer sit in the dependent table, including its older deserializers.
+	 */
+	private static class Independent<T> implements IDependentSerializer<T, Object>, IMultiVersionDependentDeserializer<T, Object> {
+		private final ISerializer<T> serializer;
+
+		public Independent(ISerializer<T> serializer) {
+			this.serializer = serializer;
 		}
-		return id;
-	}
 
-	private Class<? extends S> getType(byte id) {
-		Class<? extends S> type = classIds.getByFirst(id);
-		if(type == null) {
-			Byte nullId = classIds.getBySecond(null);
-			if(nullId != null && nullId == id) {
+		@Override
+		public void serialize(ISerializationContext context, T object) throws IOException {
+			serializer.serialize(context, object);
+		}
+
+		@Override
+		public T deserialize(IDeserializationContext context, Object extraContext) throws IOException {
+			return serializer.deserialize(context);
+		}
+
+		@Override
+		public int getVersion() {
+			return serializer.getVersion();
+		}
+
+		@Override
+		public IDependentDeserializer<T, Object> getDependentDeserializer(int version) {
+			if(!(serializer instanceof IMultiVersionDeserializer)) {
 				return null;
 			}
-			throw new IllegalArgumentException("No class registered for id "+id);
+			@SuppressWarnings("unchecked")
+			IDeserializer<T> deserializer = ((IMultiVersionDeserializer<T>) serializer).getDeserializer(version);
+			if(deserializer == null) {
+				return null;
+			}
+			return (context, extraContext) -> deserializer.deserialize(context);
 		}
-		return type;
-	}
-	
-	public static <T> ISerializer<T> configure(Consumer<SmallTypeRegistry<T>> configuration) {
-		SmallTypeRegistry<T> registry = new SmallTypeRegistry<>();
-		configuration.accept(registry);
-		return registry;
 	}
 }
@@ -0,0 +1,51 @@
+package net.pointlessgames.libs.bps;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one context per thread and resets it whenever it is handed out, so loops that
+ * write or read one message at a time do not create a context and its tables per message.
+ * A context must not be used any more after the same thread has called {@link #get()} again.
+ * <pre>
+ * private static final ThreadLocalContext&lt;ArraySerializationContext&gt; OUT =
+ *         ThreadLocalContext.ofSerialization(() -&gt; new ArraySerializationContext(registry));
+ * ...
+ * ArraySerializationContext context = OUT.get();
+ * context.writeObject(message);
+ * context.writeTo(socketStream);
+ * </pre>
+ */
+public final class ThreadLocalContext<C> {
+	private final ThreadLocal<C> contexts;
+	private final Consumer<? super C> reset;
+	
+	public ThreadLocalContext(Supplier<? extends C> factory, Consumer<? super C> reset) {
+		this.contexts = ThreadLocal.withInitial(factory);
+		this.reset = reset;
+	}
+	
+	public static <C extends SerializationContext> ThreadLocalContext<C> ofSerialization(Supplier<? extends C> factory) {
+		return new ThreadLocalContext<>(factory, SerializationContext::reset);
+	}
+	
+	public static <C extends DeserializationContext> ThreadLocalContext<C> ofDeserialization(Supplier<? extends C> factory) {
+		return new ThreadLocalContext<>(factory, DeserializationContext::reset);
+	}
+	
+	/**
+	 * @return the context of the current thread, reset.
+	 */
+	public C get() {
+		C context = contexts.get();
+		reset.accept(context);
+		return context;
+	}
+	
+	/**
+	 * Drops the context of the current thread, releasing everything it holds on to.
+	 */
+	public void remove() {
+		contexts.remove();
+	}
+}
@@ -2,19 +2,72 @@ package net.pointlessgames.libs.bps;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-import net.pointlessgames.libs.bps.functional.HashMapPairing;
-import net.pointlessgames.libs.bps.functional.IPairing;
 import net.pointlessgames.libs.bps.nested.InnerTypeMarker;
 
 public class TypeRegistry implements ISerializer<Object> {
 	private static class NullClass {
 	}
 	
-	private final Map<Class<?>, ISerializer<?>> typeSerializers = new HashMap<>();
-	private final IPairing<Integer, Class<?>> classIds = new HashMapPairing<>();
+	/**
+	 * Ids below this are looked up in an array, others in a map.
+	 */
+	private static final int MAX_DENSE_ID = 1 << 16;
+	
+	/*package-protected*/ static class Entry {
+		final int id;
+		final Class<?> type;
+		final ISerializer<?> serializer;
+
+		public Entry(int id, Class<?> type, ISerializer<?> serializer) {
+			this.id = id;
+			this.type = type;
+			this.serializer = serializer;
+		}
+	}
+	
+	/**
+	 * An immutable snapshot of all registrations. Registering replaces the snapshot
+	 * with a modified copy, so reads only need the one volatile load.
+	 */
+	private static class Tables {
+		private final Map<Class<?>, Entry> entriesByType;
+		private final Entry[] denseEntriesById;
+		private final Map<Integer, Entry> sparseEntriesById;
+		private final ClassValue<Entry> entryCache = new ClassValue<Entry>() {
+			@Override
+			protected Entry computeValue(Class<?> type) {
+				return entriesByType.get(type);
+			}
+		};
+		
+		public Tables(Map<Class<?>, Entry> entriesByType, Entry[] denseEntriesById, Map<Integer, Entry> sparseEntriesById) {
+			this.entriesByType = entriesByType;
+			this.denseEntriesById = denseEntriesById;
+			this.sparseEntriesById = sparseEntriesById;
+		}
+		
+		public Tables with(Entry entry) {
+			Map<Class<?>, Entry> entriesByType = new HashMap<>(this.entriesByType);
+			entriesByType.put(entry.type, entry);
+			Entry[] denseEntriesById = this.denseEntriesById;
+			Map<Integer, Entry> sparseEntriesById = this.sparseEntriesById;
+			if(entry.id >= 0 && entry.id < MAX_DENSE_ID) {
+				denseEntriesById = Arrays.copyOf(denseEntriesById, Math.max(entry.id + 1, denseEntriesById.length));
+				denseEntriesById[entry.id] = entry;
+			} else {
+				sparseEntriesById = new HashMap<>(sparseEntriesById);
+				sparseEntriesById.put(entry.id, entry);
+			}
+			return new Tables(entriesByType, denseEntriesById, sparseEntriesById);
+		}
+	}
+	
+	private volatile Tables tables = new Tables(new HashMap<>(), new Entry[0], new HashMap<>());
+	private volatile boolean frozen = false;
 	
 	public void registerNull(int id) {
 		register(id, NullClass.class, new ISerializer<NullClass>() {
@@ -37,61 +90,90 @@ public class TypeRegistry implements ISerializer<Object> {
 		register(id, Class.class, Serializers.map(Serializers.INT, this::getType, this::getId));
 	}
 	
-	public <T> void register(int id, Class<T> type, ISerializer<T> serializer) {
+	/**
+	 * Registrations may be made at any time, also while other threads serialize with
+	 * this registry, until it is {@link #freeze() frozen}.
+	 */
+	public synchronized <T> void register(int id, Class<T> type, ISerializer<T> serializer) {
+		if(frozen) {
+			throw new IllegalStateException("The registry is frozen");
+		}
 		assertNotDoNotSerialize(type);
-		typeSerializers.put(type, serializer);
-		classIds.add(id, type);
+		tables = tables.with(new Entry(id, type, serializer));
+	}
+	
+	/**
+	 * Makes this registry immutable. Reads never lock, so a frozen registry can be shared
+	 * by any number of threads.
+	 * @return this registry
+	 */
+	public synchronized TypeRegistry freeze() {
+		frozen = true;
+		return this;
+	}
+	
+	public boolean isFrozen() {
+		return frozen;
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public void serialize(ISerializationContext context, Object object) throws IOException {
-		Class<?> type = object != null ? object.getClass() : NullClass.class;
-		ISerializer serializer = getSerializer(type);
-		context.writeInt(getId(type));
-		context.write(serializer, object);
+		Entry entry = getEntryOf(object);
+		context.writeInt(entry.id);
+		context.write((ISerializer) entry.serializer, object);
 	}
 	
 	@Override
 	public Object deserialize(IDeserializationContext context) throws IOException {
-		Class<?> type = getType(context.readInt());
-		ISerializer<?> serializer = getSerializer(type);
-		Object value = context.read(serializer);
-		if(value == null && type != NullClass.class) {
+		Entry entry = getEntry(context.readInt());
+		return checkDeserialized(entry, context.read(entry.serializer));
+	}
+	
+	/*package-protected*/ Entry getEntryOf(Object object) {
+		return getEntry(object != null ? object.getClass() : NullClass.class);
+	}
+	
+	/*package-protected*/ Object checkDeserialized(Entry entry, Object value) throws IOException {
+		if(value == null && entry.type != NullClass.class) {
 			// Typically, object-deserializers are not permitted to deserialize to null.
 			// If the original object serialized was actually null, then we would not 
 			// have found the correct serializer in the first place (since we would not
 			// have known the type), thus, null from an object-deserializer always
 			// indicates an error.
-			throw new IOException(serializer.toString() + " for type "+type.getName()+" deserialized to null!");
+			throw new IOException(entry.serializer.toString() + " for type "+entry.type.getName()+" deserialized to null!");
 		}
 		return value;
 	}
 
-	@SuppressWarnings("unchecked")
-	private <T> ISerializer<T> getSerializer(Class<T> type) {
-		ISerializer<T> serializer = (ISerializer<T>) typeSerializers.get(type);
-		if(serializer == null) {
+	/*package-protected*/ Entry getEntry(Class<?> type) {
+		Entry entry = tables.entryCache.get(type);
+		if(entry == null) {
 			assertNotDoNotSerialize(type);
 			throw new IllegalArgumentException("No serializer registered for type "+type.getName());
 		}
-		return serializer;
+		return entry;
+	}
+	
+	/*package-protected*/ Entry getEntry(int id) {
+		Tables tables = this.tables;
+		Entry entry = id >= 0 && id < tables.denseEntriesById.length ? tables.denseEntriesById[id] : tables.sparseEntriesById.get(id);
+		if(entry == null) {
+			throw new IllegalArgumentException("No class registered for id "+id);
+		}
+		return entry;
 	}
 	
 	private int getId(Class<?> type) {
-		Integer id = classIds.getBySecond(type);
-		if(id == null) {
+		Entry entry = tables.entryCache.get(type);
+		if(entry == null) {
 			throw new IllegalArgumentException("Type "+type.getName()+" not registered");
 		}
-		return id;
+		return entry.id;
 	}
 
 	private Class<?> getType(int id) {
-		Class<?> type = classIds.getByFirst(id);
-		if(type == null) {
-			throw new IllegalArgumentException("No class registered for id "+id);
-		}
-		return type;
+		return getEntry(id).type;
 	}
 	
 	private static void assertNotDoNotSerialize(Class<?> type) {
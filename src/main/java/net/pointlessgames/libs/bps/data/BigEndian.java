@@ -0,0 +1,39 @@
+package net.pointlessgames.libs.bps.data;
+
+/*package-protected*/ class BigEndian {
+	public static void putShort(byte[] buffer, int position, int value) {
+		buffer[position] = (byte) (value >> 8);
+		buffer[position + 1] = (byte) value;
+	}
+
+	public static void putInt(byte[] buffer, int position, int value) {
+		buffer[position] = (byte) (value >> 24);
+		buffer[position + 1] = (byte) (value >> 16);
+		buffer[position + 2] = (byte) (value >> 8);
+		buffer[position + 3] = (byte) value;
+	}
+
+	public static void putLong(byte[] buffer, int position, long value) {
+		putInt(buffer, position, (int) (value >> 32));
+		putInt(buffer, position + 4, (int) value);
+	}
+
+	public static short getShort(byte[] buffer, int position) {
+		return (short) ((buffer[position] << 8) | (buffer[position + 1] & 0xFF));
+	}
+
+	public static char getChar(byte[] buffer, int position) {
+		return (char) (((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF));
+	}
+
+	public static int getInt(byte[] buffer, int position) {
+		return (buffer[position] << 24)
+				| ((buffer[position + 1] & 0xFF) << 16)
+				| ((buffer[position + 2] & 0xFF) << 8)
+				| (buffer[position + 3] & 0xFF);
+	}
+
+	public static long getLong(byte[] buffer, int position) {
+		return ((long) getInt(buffer, position) << 32) | (getInt(buffer, position + 4) & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,292 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads ahead from the underlying stream into an internal window and decodes
+ * all values from it directly. Reads the data layout of {@link InputStreamDataReader}.
+ * <p>
+ * Since data is read ahead, the stream may be consumed beyond the last value read.
+ */
+public class BufferedDataReader implements IDataReader {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static final int MIN_BUFFER_SIZE = 16;
+
+	private final InputStream inputStream;
+	private final byte[] buffer;
+	private int position = 0;
+	private int limit = 0;
+	private byte[] scratch = null;
+
+	public BufferedDataReader(InputStream inputStream) {
+		this(inputStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BufferedDataReader(InputStream inputStream, int bufferSize) {
+		if(inputStream == null) {
+			throw new NullPointerException("inputStream is null");
+		}
+		if(bufferSize < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Buffer size must be at least "+MIN_BUFFER_SIZE+" (was "+bufferSize+")");
+		}
+		this.inputStream = inputStream;
+		this.buffer = new byte[bufferSize];
+	}
+
+	private void require(int bytes) throws IOException {
+		if(limit - position < bytes) {
+			fill(bytes);
+		}
+	}
+
+	private void fill(int bytes) throws IOException {
+		int remaining = limit - position;
+		if(remaining > 0 && position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+		}
+		position = 0;
+		limit = remaining;
+		while(limit < bytes) {
+			int read = inputStream.read(buffer, limit, buffer.length - limit);
+			if(read == -1) {
+				throw new EOFException();
+			}
+			limit += read;
+		}
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		require(1);
+		return buffer[position++] != 0;
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		int byteLength = Strings.readLength(this);
+		if(byteLength <= buffer.length) {
+			require(byteLength);
+			String value = new String(buffer, position, byteLength, StandardCharsets.UTF_8);
+			position += byteLength;
+			return value;
+		}
+		if(byteLength > Strings.MAX_RETAINED_SCRATCH) {
+			return Strings.readLarge(this, byteLength);
+		}
+		byte[] bytes = Strings.scratch(scratch, byteLength);
+		readBytes(bytes, 0, byteLength);
+		scratch = Strings.retain(bytes);
+		return new String(bytes, 0, byteLength, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		short value = BigEndian.getShort(buffer, position);
+		position += 2;
+		return value;
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		long value = BigEndian.getLong(buffer, position);
+		position += 8;
+		return value;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		require(2);
+		char value = BigEndian.getChar(buffer, position);
+		position += 2;
+		return value;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer[position++];
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		int value = BigEndian.getInt(buffer, position);
+		position += 4;
+		return value;
+	}
+
+	@Override
+	public int readVarInt() throws IOException {
+		require(1);
+		int length = VarInts.length(buffer[position]);
+		require(length);
+		int value = VarInts.decode(buffer, position, length);
+		position += length;
+		return value;
+	}
+
+	@Override
+	public long readVarLong() throws IOException {
+		require(1);
+		int length = VarLongs.length(buffer[position]);
+		require(length);
+		long value = VarLongs.decode(buffer, position, length);
+		position += length;
+		return value;
+	}
+
+	@Override
+	public void readBytes(byte[] result, int offset, int length) throws IOException {
+		int buffered = Math.min(limit - position, length);
+		System.arraycopy(buffer, position, result, offset, buffered);
+		position += buffered;
+		int remaining = length - buffered;
+		if(remaining == 0) {
+			return;
+		}
+		if(remaining >= buffer.length) {
+			while(remaining > 0) {
+				int read = inputStream.read(result, offset + length - remaining, remaining);
+				if(read == -1) {
+					throw new EOFException();
+				}
+				remaining -= read;
+			}
+		} else {
+			require(remaining);
+			System.arraycopy(buffer, position, result, offset + buffered, remaining);
+			position += remaining;
+		}
+	}
+
+	@Override
+	public void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(1);
+			int count = Math.min(end - i, limit - position);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = buffer[position++] != 0;
+			}
+		}
+	}
+
+	@Override
+	public void readShorts(short[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(2);
+			int count = Math.min(end - i, (limit - position) / 2);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = BigEndian.getShort(buffer, position);
+				position += 2;
+			}
+		}
+	}
+
+	@Override
+	public void readChars(char[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(2);
+			int count = Math.min(end - i, (limit - position) / 2);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = BigEndian.getChar(buffer, position);
+				position += 2;
+			}
+		}
+	}
+
+	@Override
+	public void readInts(int[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(4);
+			int count = Math.min(end - i, (limit - position) / 4);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = BigEndian.getInt(buffer, position);
+				position += 4;
+			}
+		}
+	}
+
+	@Override
+	public void readVarInts(int[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			if(limit - position < VarInts.MAX_BYTES) {
+				result[i++] = readVarInt();
+				continue;
+			}
+			// Every value in the window can be decoded without bounds checks
+			int count = Math.min(end - i, (limit - position) / VarInts.MAX_BYTES);
+			for(int j = 0; j < count; ++j) {
+				int valueLength = VarInts.length(buffer[position]);
+				result[i++] = VarInts.decode(buffer, position, valueLength);
+				position += valueLength;
+			}
+		}
+	}
+
+	@Override
+	public void readLongs(long[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(8);
+			int count = Math.min(end - i, (limit - position) / 8);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = BigEndian.getLong(buffer, position);
+				position += 8;
+			}
+		}
+	}
+
+	@Override
+	public void readFloats(float[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(4);
+			int count = Math.min(end - i, (limit - position) / 4);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = Float.intBitsToFloat(BigEndian.getInt(buffer, position));
+				position += 4;
+			}
+		}
+	}
+
+	@Override
+	public void readDoubles(double[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			require(8);
+			int count = Math.min(end - i, (limit - position) / 8);
+			for(int j = 0; j < count; ++j) {
+				result[i++] = Double.longBitsToDouble(BigEndian.getLong(buffer, position));
+				position += 8;
+			}
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes all values straight into an internal array and hands it to the
+ * underlying stream in large blocks. The data layout is identical to
+ * {@link OutputStreamDataWriter}.
+ * <p>
+ * Nothing reaches the stream until the buffer fills up or {@link #flush()} is called.
+ */
+public class BufferedDataWriter implements IDataWriter {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static final int MIN_BUFFER_SIZE = 16;
+
+	private final OutputStream outputStream;
+	private final byte[] buffer;
+	private int position = 0;
+
+	public BufferedDataWriter(OutputStream outputStream) {
+		this(outputStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BufferedDataWriter(OutputStream outputStream, int bufferSize) {
+		if(outputStream == null) {
+			throw new NullPointerException("outputStream is null");
+		}
+		if(bufferSize < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Buffer size must be at least "+MIN_BUFFER_SIZE+" (was "+bufferSize+")");
+		}
+		this.outputStream = outputStream;
+		this.buffer = new byte[bufferSize];
+	}
+
+	private void ensureCapacity(int bytes) throws IOException {
+		if(buffer.length - position < bytes) {
+			drainBuffer();
+		}
+	}
+
+	private void drainBuffer() throws IOException {
+		if(position > 0) {
+			outputStream.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	@Override
+	public void writeFloat(float value) throws IOException {
+		writeInt(Float.floatToIntBits(value));
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		ensureCapacity(1);
+		buffer[position++] = (byte) (value ? 1 : 0);
+	}
+
+	@Override
+	public void writeDouble(double value) throws IOException {
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public void writeShort(short value) throws IOException {
+		ensureCapacity(2);
+		BigEndian.putShort(buffer, position, value);
+		position += 2;
+	}
+
+	@Override
+	public void writeLong(long value) throws IOException {
+		ensureCapacity(8);
+		BigEndian.putLong(buffer, position, value);
+		position += 8;
+	}
+
+	@Override
+	public void writeChar(char value) throws IOException {
+		ensureCapacity(2);
+		BigEndian.putShort(buffer, position, value);
+		position += 2;
+	}
+
+	@Override
+	public void writeByte(byte value) throws IOException {
+		ensureCapacity(1);
+		buffer[position++] = value;
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		ensureCapacity(4);
+		BigEndian.putInt(buffer, position, value);
+		position += 4;
+	}
+
+	@Override
+	public void writeVarInt(int value) throws IOException {
+		ensureCapacity(VarInts.MAX_BYTES);
+		position = VarInts.encode(buffer, position, value);
+	}
+
+	@Override
+	public void writeVarLong(long value) throws IOException {
+		ensureCapacity(VarLongs.MAX_BYTES);
+		position = VarLongs.encode(buffer, position, value);
+	}
+
+	@Override
+	public void writeUTF(String value) throws IOException {
+		writeVarInt(Strings.encodedLength(value));
+		final int length = value.length();
+		int i = 0;
+		while(i < length) {
+			ensureCapacity(2 * Strings.MAX_BYTES_PER_CHAR);
+			int to = Strings.chunkEnd(value, i, buffer.length - position);
+			position = Strings.encode(value, i, to, buffer, position);
+			i = to;
+		}
+	}
+
+	@Override
+	public void writeBytes(byte[] value) throws IOException {
+		writeBytes(value, 0, value.length);
+	}
+
+	@Override
+	public void writeBytes(byte[] values, int offset, int length) throws IOException {
+		if(length > buffer.length - position) {
+			drainBuffer();
+			if(length >= buffer.length) {
+				outputStream.write(values, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(values, offset, buffer, position, length);
+		position += length;
+	}
+
+	@Override
+	public void writeBooleans(boolean[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(1);
+			int count = Math.min(end - i, buffer.length - position);
+			for(int j = 0; j < count; ++j) {
+				buffer[position++] = (byte) (values[i++] ? 1 : 0);
+			}
+		}
+	}
+
+	@Override
+	public void writeShorts(short[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(2);
+			int count = Math.min(end - i, (buffer.length - position) / 2);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putShort(buffer, position, values[i++]);
+				position += 2;
+			}
+		}
+	}
+
+	@Override
+	public void writeChars(char[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(2);
+			int count = Math.min(end - i, (buffer.length - position) / 2);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putShort(buffer, position, values[i++]);
+				position += 2;
+			}
+		}
+	}
+
+	@Override
+	public void writeInts(int[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(4);
+			int count = Math.min(end - i, (buffer.length - position) / 4);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putInt(buffer, position, values[i++]);
+				position += 4;
+			}
+		}
+	}
+
+	@Override
+	public void writeVarInts(int[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(VarInts.MAX_BYTES);
+			int count = Math.min(end - i, (buffer.length - position) / VarInts.MAX_BYTES);
+			for(int j = 0; j < count; ++j) {
+				position = VarInts.encode(buffer, position, values[i++]);
+			}
+		}
+	}
+
+	@Override
+	public void writeLongs(long[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(8);
+			int count = Math.min(end - i, (buffer.length - position) / 8);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putLong(buffer, position, values[i++]);
+				position += 8;
+			}
+		}
+	}
+
+	@Override
+	public void writeFloats(float[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(4);
+			int count = Math.min(end - i, (buffer.length - position) / 4);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putInt(buffer, position, Float.floatToIntBits(values[i++]));
+				position += 4;
+			}
+		}
+	}
+
+	@Override
+	public void writeDoubles(double[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(8);
+			int count = Math.min(end - i, (buffer.length - position) / 8);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putLong(buffer, position, Double.doubleToLongBits(values[i++]));
+				position += 8;
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drainBuffer();
+		outputStream.flush();
+	}
+}
@@ -0,0 +1,228 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the data layout of {@link InputStreamDataReader} from a region of an array.
+ * Being final, calls through a field of this type are bound statically and can be
+ * inlined completely.
+ */
+public final class ByteArrayDataReader implements IDataReader {
+	private byte[] buffer;
+	private int limit;
+	private int position;
+
+	public ByteArrayDataReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	public ByteArrayDataReader(byte[] buffer, int offset, int length) {
+		reset(buffer, offset, length);
+	}
+	
+	/**
+	 * Continues reading from a region of another array.
+	 */
+	public void reset(byte[] buffer, int offset, int length) {
+		if(offset < 0 || length < 0 || offset > buffer.length - length) {
+			throw new IndexOutOfBoundsException("Region "+offset+"+"+length+" out of bounds for length "+buffer.length);
+		}
+		this.buffer = buffer;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	private void require(long bytes) throws EOFException {
+		if(limit - position < bytes) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		require(1);
+		return buffer[position++] != 0;
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		int byteLength = Strings.readLength(this);
+		require(byteLength);
+		String value = new String(buffer, position, byteLength, StandardCharsets.UTF_8);
+		position += byteLength;
+		return value;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		short value = BigEndian.getShort(buffer, position);
+		position += 2;
+		return value;
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		long value = BigEndian.getLong(buffer, position);
+		position += 8;
+		return value;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		require(2);
+		char value = BigEndian.getChar(buffer, position);
+		position += 2;
+		return value;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer[position++];
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		int value = BigEndian.getInt(buffer, position);
+		position += 4;
+		return value;
+	}
+
+	/**
+	 * The length comes from the leading ones of the first byte, after which the whole
+	 * value is decoded from the array with a single bounds check.
+	 */
+	@Override
+	public int readVarInt() throws IOException {
+		require(1);
+		int length = VarInts.length(buffer[position]);
+		require(length);
+		int value = VarInts.decode(buffer, position, length);
+		position += length;
+		return value;
+	}
+
+	@Override
+	public long readVarLong() throws IOException {
+		require(1);
+		int length = VarLongs.length(buffer[position]);
+		require(length);
+		long value = VarLongs.decode(buffer, position, length);
+		position += length;
+		return value;
+	}
+
+	@Override
+	public void readBytes(byte[] result, int offset, int length) throws IOException {
+		require(length);
+		System.arraycopy(buffer, position, result, offset, length);
+		position += length;
+	}
+
+	@Override
+	public void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		require(length);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = buffer[position++] != 0;
+		}
+	}
+
+	@Override
+	public void readShorts(short[] result, int offset, int length) throws IOException {
+		require((long) length * 2);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = BigEndian.getShort(buffer, position);
+			position += 2;
+		}
+	}
+
+	@Override
+	public void readChars(char[] result, int offset, int length) throws IOException {
+		require((long) length * 2);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = BigEndian.getChar(buffer, position);
+			position += 2;
+		}
+	}
+
+	@Override
+	public void readInts(int[] result, int offset, int length) throws IOException {
+		require((long) length * 4);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = BigEndian.getInt(buffer, position);
+			position += 4;
+		}
+	}
+
+	@Override
+	public void readVarInts(int[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			if(limit - position < VarInts.MAX_BYTES) {
+				result[i++] = readVarInt();
+				continue;
+			}
+			// Every value in the window can be decoded without bounds checks
+			int count = Math.min(end - i, (limit - position) / VarInts.MAX_BYTES);
+			for(int j = 0; j < count; ++j) {
+				int valueLength = VarInts.length(buffer[position]);
+				result[i++] = VarInts.decode(buffer, position, valueLength);
+				position += valueLength;
+			}
+		}
+	}
+
+	@Override
+	public void readLongs(long[] result, int offset, int length) throws IOException {
+		require((long) length * 8);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = BigEndian.getLong(buffer, position);
+			position += 8;
+		}
+	}
+
+	@Override
+	public void readFloats(float[] result, int offset, int length) throws IOException {
+		require((long) length * 4);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = Float.intBitsToFloat(BigEndian.getInt(buffer, position));
+			position += 4;
+		}
+	}
+
+	@Override
+	public void readDoubles(double[] result, int offset, int length) throws IOException {
+		require((long) length * 8);
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = Double.longBitsToDouble(BigEndian.getLong(buffer, position));
+			position += 8;
+		}
+	}
+
+	/**
+	 * @return the index in the array of the next byte to be read.
+	 */
+	public int position() {
+		return position;
+	}
+
+	public int remaining() {
+		return limit - position;
+	}
+}
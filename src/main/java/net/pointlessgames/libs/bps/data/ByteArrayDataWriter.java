@@ -0,0 +1,225 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes all values into an owned array that grows as needed. The data layout is
+ * identical to {@link OutputStreamDataWriter}. Being final, calls through a field of
+ * this type are bound statically and can be inlined completely.
+ */
+public final class ByteArrayDataWriter implements IDataWriter {
+	public static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+	private byte[] buffer;
+	private int position = 0;
+
+	public ByteArrayDataWriter() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	public ByteArrayDataWriter(int initialCapacity) {
+		if(initialCapacity <= 0) {
+			throw new IllegalArgumentException("Initial capacity must be positive (was "+initialCapacity+")");
+		}
+		this.buffer = new byte[initialCapacity];
+	}
+
+	private void ensureCapacity(long bytes) {
+		if(buffer.length - position < bytes) {
+			grow(bytes);
+		}
+	}
+
+	private void grow(long bytes) {
+		long required = position + bytes;
+		if(required > Integer.MAX_VALUE) {
+			throw new OutOfMemoryError("Serialized data exceeds the maximum array size");
+		}
+		long newCapacity = Math.min(buffer.length * 2L, Integer.MAX_VALUE - 8);
+		if(newCapacity < required) {
+			newCapacity = required;
+		}
+		buffer = Arrays.copyOf(buffer, (int) newCapacity);
+	}
+
+	@Override
+	public void writeFloat(float value) {
+		writeInt(Float.floatToIntBits(value));
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		ensureCapacity(1);
+		buffer[position++] = (byte) (value ? 1 : 0);
+	}
+
+	@Override
+	public void writeDouble(double value) {
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public void writeShort(short value) {
+		ensureCapacity(2);
+		BigEndian.putShort(buffer, position, value);
+		position += 2;
+	}
+
+	@Override
+	public void writeLong(long value) {
+		ensureCapacity(8);
+		BigEndian.putLong(buffer, position, value);
+		position += 8;
+	}
+
+	@Override
+	public void writeChar(char value) {
+		ensureCapacity(2);
+		BigEndian.putShort(buffer, position, value);
+		position += 2;
+	}
+
+	@Override
+	public void writeByte(byte value) {
+		ensureCapacity(1);
+		buffer[position++] = value;
+	}
+
+	@Override
+	public void writeInt(int value) {
+		ensureCapacity(4);
+		BigEndian.putInt(buffer, position, value);
+		position += 4;
+	}
+
+	@Override
+	public void writeVarInt(int value) {
+		ensureCapacity(VarInts.MAX_BYTES);
+		position = VarInts.encode(buffer, position, value);
+	}
+
+	@Override
+	public void writeVarLong(long value) {
+		ensureCapacity(VarLongs.MAX_BYTES);
+		position = VarLongs.encode(buffer, position, value);
+	}
+
+	@Override
+	public void writeUTF(String value) {
+		int byteLength = Strings.encodedLength(value);
+		writeVarInt(byteLength);
+		ensureCapacity(byteLength);
+		position = Strings.encode(value, 0, value.length(), buffer, position);
+	}
+
+	@Override
+	public void writeBytes(byte[] value) {
+		writeBytes(value, 0, value.length);
+	}
+
+	@Override
+	public void writeBytes(byte[] values, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(values, offset, buffer, position, length);
+		position += length;
+	}
+
+	@Override
+	public void writeBooleans(boolean[] values, int offset, int length) {
+		ensureCapacity(length);
+		for(int i = offset; i < offset + length; ++i) {
+			buffer[position++] = (byte) (values[i] ? 1 : 0);
+		}
+	}
+
+	@Override
+	public void writeShorts(short[] values, int offset, int length) {
+		ensureCapacity((long) length * 2);
+		for(int i = offset; i < offset + length; ++i) {
+			BigEndian.putShort(buffer, position, values[i]);
+			position += 2;
+		}
+	}
+
+	@Override
+	public void writeChars(char[] values, int offset, int length) {
+		ensureCapacity((long) length * 2);
+		for(int i = offset; i < offset + length; ++i) {
+			BigEndian.putShort(buffer, position, values[i]);
+			position += 2;
+		}
+	}
+
+	@Override
+	public void writeInts(int[] values, int offset, int length) {
+		ensureCapacity((long) length * 4);
+		for(int i = offset; i < offset + length; ++i) {
+			BigEndian.putInt(buffer, position, values[i]);
+			position += 4;
+		}
+	}
+
+	@Override
+	public void writeVarInts(int[] values, int offset, int length) {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ensureCapacity(VarInts.MAX_BYTES);
+			int count = Math.min(end - i, (buffer.length - position) / VarInts.MAX_BYTES);
+			for(int j = 0; j < count; ++j) {
+				position = VarInts.encode(buffer, position, values[i++]);
+			}
+		}
+	}
+
+	@Override
+	public void writeLongs(long[] values, int offset, int length) {
+		ensureCapacity((long) length * 8);
+		for(int i = offset; i < offset + length; ++i) {
+			BigEndian.putLong(buffer, position, values[i]);
+			position += 8;
+		}
+	}
+
+	@Override
+	public void writeFloats(float[] values, int offset, int length) {
+		ensureCapacity((long) length * 4);
+		for(int i = offset; i < offset + length; ++i) {
+			BigEndian.putInt(buffer, position, Float.floatToIntBits(values[i]));
+			position += 4;
+		}
+	}
+
+	@Override
+	public void writeDoubles(double[] values, int offset, int length) {
+		ensureCapacity((long) length * 8);
+		for(int i = offset; i < offset + length; ++i) {
+			BigEndian.putLong(buffer, position, Double.doubleToLongBits(values[i]));
+			position += 8;
+		}
+	}
+
+	/**
+	 * @return the number of bytes written since creation or the last {@link #clear()}.
+	 */
+	public int size() {
+		return position;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, position);
+	}
+
+	public void writeTo(OutputStream outputStream) throws IOException {
+		outputStream.write(buffer, 0, position);
+	}
+
+	/**
+	 * Discards everything written, keeping the allocated array for reuse.
+	 */
+	public void clear() {
+		position = 0;
+	}
+}
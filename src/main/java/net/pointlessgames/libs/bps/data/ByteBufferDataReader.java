@@ -1,11 +1,13 @@
 package net.pointlessgames.libs.bps.data;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class ByteBufferDataReader implements IDataReader {
 	private final ByteBuffer buffer;
+	private byte[] scratch = null;
 	
 	public ByteBufferDataReader(ByteBuffer buffer) {
 		this.buffer = buffer;
@@ -28,10 +30,19 @@ public class ByteBufferDataReader implements IDataReader {
 
 	@Override
 	public String readUTF() throws IOException {
-		int byteLength = readInt();
-		byte[] bytes = new byte[byteLength];
-		readBytes(bytes, 0, byteLength);
-		return new String(bytes, StandardCharsets.UTF_8);
+		int byteLength = Strings.readLength(this);
+		if(buffer.remaining() < byteLength) {
+			throw new BufferUnderflowException();
+		}
+		if(buffer.hasArray()) {
+			String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), byteLength, StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + byteLength);
+			return value;
+		}
+		byte[] bytes = Strings.scratch(scratch, byteLength);
+		buffer.get(bytes, 0, byteLength);
+		scratch = Strings.retain(bytes);
+		return new String(bytes, 0, byteLength, StandardCharsets.UTF_8);
 	}
 
 	@Override
@@ -63,4 +74,50 @@ public class ByteBufferDataReader implements IDataReader {
 	public void readBytes(byte[] result, int offset, int length) throws IOException {
 		buffer.get(result, offset, length);
 	}
+
+	@Override
+	public void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		if(buffer.remaining() < length) {
+			throw new BufferUnderflowException();
+		}
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = buffer.get() == 1;
+		}
+	}
+
+	@Override
+	public void readShorts(short[] result, int offset, int length) throws IOException {
+		buffer.asShortBuffer().get(result, offset, length);
+		buffer.position(buffer.position() + length * 2);
+	}
+
+	@Override
+	public void readChars(char[] result, int offset, int length) throws IOException {
+		buffer.asCharBuffer().get(result, offset, length);
+		buffer.position(buffer.position() + length * 2);
+	}
+
+	@Override
+	public void readInts(int[] result, int offset, int length) throws IOException {
+		buffer.asIntBuffer().get(result, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	@Override
+	public void readLongs(long[] result, int offset, int length) throws IOException {
+		buffer.asLongBuffer().get(result, offset, length);
+		buffer.position(buffer.position() + length * 8);
+	}
+
+	@Override
+	public void readFloats(float[] result, int offset, int length) throws IOException {
+		buffer.asFloatBuffer().get(result, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	@Override
+	public void readDoubles(double[] result, int offset, int length) throws IOException {
+		buffer.asDoubleBuffer().get(result, offset, length);
+		buffer.position(buffer.position() + length * 8);
+	}
 }
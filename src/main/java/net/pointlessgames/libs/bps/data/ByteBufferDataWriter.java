@@ -1,14 +1,17 @@
 package net.pointlessgames.libs.bps.data;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 
 public class ByteBufferDataWriter implements IDataWriter {
 	private static final byte ZERO = 0;
 	private static final byte ONE = 1;
 
+	private static final int SCRATCH_SIZE = 1024;
+
 	private final ByteBuffer buffer;
+	private byte[] scratch;
 
 	public ByteBufferDataWriter(ByteBuffer buffer) {
 		this.buffer = buffer;
@@ -29,13 +32,6 @@ public class ByteBufferDataWriter implements IDataWriter {
 		buffer.putDouble(value);
 	}
 
-	@Override
-	public void writeUTF(String value) throws IOException {
-		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-		writeInt(bytes.length);
-		writeBytes(bytes);
-	}
-
 	@Override
 	public void writeShort(short value) throws IOException {
 		buffer.putShort(value);
@@ -61,8 +57,85 @@ public class ByteBufferDataWriter implements IDataWriter {
 		buffer.putInt(value);
 	}
 
+	@Override
+	public void writeUTF(String value) throws IOException {
+		int byteLength = Strings.encodedLength(value);
+		writeVarInt(byteLength);
+		if(buffer.remaining() < byteLength) {
+			throw new BufferOverflowException();
+		}
+		if(buffer.hasArray()) {
+			int start = buffer.arrayOffset() + buffer.position();
+			Strings.encode(value, 0, value.length(), buffer.array(), start);
+			buffer.position(buffer.position() + byteLength);
+			return;
+		}
+		// Direct buffers are filled through a small reusable array
+		if(scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		final int length = value.length();
+		int i = 0;
+		while(i < length) {
+			int to = Strings.chunkEnd(value, i, scratch.length);
+			buffer.put(scratch, 0, Strings.encode(value, i, to, scratch, 0));
+			i = to;
+		}
+	}
+
 	@Override
 	public void writeBytes(byte[] value) throws IOException {
 		buffer.put(value);
 	}
+
+	@Override
+	public void writeBytes(byte[] values, int offset, int length) throws IOException {
+		buffer.put(values, offset, length);
+	}
+
+	@Override
+	public void writeBooleans(boolean[] values, int offset, int length) throws IOException {
+		if(buffer.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		for(int i = offset; i < offset + length; ++i) {
+			buffer.put(values[i] ? ONE : ZERO);
+		}
+	}
+
+	@Override
+	public void writeShorts(short[] values, int offset, int length) throws IOException {
+		buffer.asShortBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 2);
+	}
+
+	@Override
+	public void writeChars(char[] values, int offset, int length) throws IOException {
+		buffer.asCharBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 2);
+	}
+
+	@Override
+	public void writeInts(int[] values, int offset, int length) throws IOException {
+		buffer.asIntBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	@Override
+	public void writeLongs(long[] values, int offset, int length) throws IOException {
+		buffer.asLongBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 8);
+	}
+
+	@Override
+	public void writeFloats(float[] values, int offset, int length) throws IOException {
+		buffer.asFloatBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	@Override
+	public void writeDoubles(double[] values, int offset, int length) throws IOException {
+		buffer.asDoubleBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 8);
+	}
 }
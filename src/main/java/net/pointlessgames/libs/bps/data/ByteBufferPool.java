@@ -0,0 +1,59 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A bounded, thread safe pool of equally sized heap or direct buffers.
+ */
+public class ByteBufferPool {
+	private final int bufferSize;
+	private final int maxPooled;
+	private final boolean direct;
+	private final ArrayDeque<ByteBuffer> pooled = new ArrayDeque<>();
+
+	public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+		if(bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive (was "+bufferSize+")");
+		}
+		if(maxPooled < 0) {
+			throw new IllegalArgumentException("Max pooled must not be negative (was "+maxPooled+")");
+		}
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+		this.direct = direct;
+	}
+
+	public ByteBuffer acquire() {
+		ByteBuffer buffer;
+		synchronized (pooled) {
+			buffer = pooled.pollLast();
+		}
+		if(buffer == null) {
+			return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		return buffer;
+	}
+
+	public void release(ByteBuffer buffer) {
+		if(buffer.capacity() != bufferSize || buffer.isDirect() != direct || buffer.isReadOnly()) {
+			throw new IllegalArgumentException("Buffer was not acquired from this pool");
+		}
+		buffer.clear();
+		synchronized (pooled) {
+			if(pooled.size() < maxPooled) {
+				pooled.addLast(buffer);
+			}
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getPooledCount() {
+		synchronized (pooled) {
+			return pooled.size();
+		}
+	}
+}
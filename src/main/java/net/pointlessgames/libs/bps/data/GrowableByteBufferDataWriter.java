@@ -0,0 +1,372 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the data layout of {@link ByteBufferDataWriter}, but never runs out of space.
+ * When the current buffer is full, another one is taken from the {@link ByteBufferPool}
+ * and chained after it. Values may straddle two buffers.
+ * <p>
+ * Call {@link #release()} when the written data has been consumed to hand all buffers
+ * back to the pool. The writer can then be used again.
+ */
+public class GrowableByteBufferDataWriter implements IDataWriter {
+	private static final byte ZERO = 0;
+	private static final byte ONE = 1;
+	private static final int SCRATCH_SIZE = 1024;
+
+	private final ByteBufferPool pool;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private ByteBuffer current = null;
+	private long completedBytes = 0;
+	private byte[] scratch = null;
+	private byte[] transfer = null;
+	private ByteBuffer[] views = new ByteBuffer[0];
+	private ByteBuffer[] viewSources = new ByteBuffer[0];
+
+	public GrowableByteBufferDataWriter(ByteBufferPool pool) {
+		this.pool = pool;
+	}
+
+	private ByteBuffer nextChunk() {
+		if(current != null) {
+			completedBytes += current.position();
+		}
+		current = pool.acquire();
+		chunks.add(current);
+		return current;
+	}
+
+	private ByteBuffer require(int bytes) {
+		ByteBuffer buffer = current;
+		if(buffer == null || buffer.remaining() < bytes) {
+			return null;
+		}
+		return buffer;
+	}
+
+	private void put(byte value) {
+		ByteBuffer buffer = current;
+		if(buffer == null || !buffer.hasRemaining()) {
+			buffer = nextChunk();
+		}
+		buffer.put(value);
+	}
+
+	private void putStraddling(long value, int bytes) {
+		for(int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+			put((byte) (value >> shift));
+		}
+	}
+
+	@Override
+	public void writeFloat(float value) throws IOException {
+		writeInt(Float.floatToIntBits(value));
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		put(value ? ONE : ZERO);
+	}
+
+	@Override
+	public void writeDouble(double value) throws IOException {
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public void writeShort(short value) throws IOException {
+		ByteBuffer buffer = require(2);
+		if(buffer != null) {
+			buffer.putShort(value);
+		} else {
+			putStraddling(value, 2);
+		}
+	}
+
+	@Override
+	public void writeLong(long value) throws IOException {
+		ByteBuffer buffer = require(8);
+		if(buffer != null) {
+			buffer.putLong(value);
+		} else {
+			putStraddling(value, 8);
+		}
+	}
+
+	@Override
+	public void writeChar(char value) throws IOException {
+		ByteBuffer buffer = require(2);
+		if(buffer != null) {
+			buffer.putChar(value);
+		} else {
+			putStraddling(value, 2);
+		}
+	}
+
+	@Override
+	public void writeByte(byte value) throws IOException {
+		put(value);
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		ByteBuffer buffer = require(4);
+		if(buffer != null) {
+			buffer.putInt(value);
+		} else {
+			putStraddling(value, 4);
+		}
+	}
+
+	@Override
+	public void writeUTF(String value) throws IOException {
+		int byteLength = Strings.encodedLength(value);
+		writeVarInt(byteLength);
+		ByteBuffer buffer = require(byteLength);
+		if(buffer != null && buffer.hasArray()) {
+			Strings.encode(value, 0, value.length(), buffer.array(), buffer.arrayOffset() + buffer.position());
+			buffer.position(buffer.position() + byteLength);
+			return;
+		}
+		// Direct buffers and strings straddling two buffers go through a small reusable array
+		if(scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		final int length = value.length();
+		int i = 0;
+		while(i < length) {
+			int to = Strings.chunkEnd(value, i, scratch.length);
+			writeBytes(scratch, 0, Strings.encode(value, i, to, scratch, 0));
+			i = to;
+		}
+	}
+
+	@Override
+	public void writeBytes(byte[] value) throws IOException {
+		writeBytes(value, 0, value.length);
+	}
+
+	@Override
+	public void writeBytes(byte[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			ByteBuffer buffer = current;
+			if(buffer == null || !buffer.hasRemaining()) {
+				buffer = nextChunk();
+			}
+			int count = Math.min(buffer.remaining(), end - i);
+			buffer.put(values, i, count);
+			i += count;
+		}
+	}
+
+	@Override
+	public void writeBooleans(boolean[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			put(values[i] ? ONE : ZERO);
+		}
+	}
+
+	/**
+	 * @return how many values of the given width fit in the current buffer. Zero means
+	 * the next value has to straddle into a new buffer.
+	 */
+	private int fitting(int width) {
+		ByteBuffer buffer = current;
+		if(buffer == null || !buffer.hasRemaining()) {
+			buffer = nextChunk();
+		}
+		return buffer.remaining() / width;
+	}
+
+	@Override
+	public void writeShorts(short[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(fitting(2), end - i);
+			if(count == 0) {
+				writeShort(values[i++]);
+			} else {
+				current.asShortBuffer().put(values, i, count);
+				current.position(current.position() + count * 2);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void writeChars(char[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(fitting(2), end - i);
+			if(count == 0) {
+				writeChar(values[i++]);
+			} else {
+				current.asCharBuffer().put(values, i, count);
+				current.position(current.position() + count * 2);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void writeInts(int[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(fitting(4), end - i);
+			if(count == 0) {
+				writeInt(values[i++]);
+			} else {
+				current.asIntBuffer().put(values, i, count);
+				current.position(current.position() + count * 4);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void writeLongs(long[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(fitting(8), end - i);
+			if(count == 0) {
+				writeLong(values[i++]);
+			} else {
+				current.asLongBuffer().put(values, i, count);
+				current.position(current.position() + count * 8);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void writeFloats(float[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(fitting(4), end - i);
+			if(count == 0) {
+				writeFloat(values[i++]);
+			} else {
+				current.asFloatBuffer().put(values, i, count);
+				current.position(current.position() + count * 4);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void writeDoubles(double[] values, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(fitting(8), end - i);
+			if(count == 0) {
+				writeDouble(values[i++]);
+			} else {
+				current.asDoubleBuffer().put(values, i, count);
+				current.position(current.position() + count * 8);
+				i += count;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes written since creation or the last {@link #release()}.
+	 */
+	public long size() {
+		return completedBytes + (current != null ? current.position() : 0);
+	}
+
+	/**
+	 * @return read-only views of the written data, in order, suitable for gathering writes.
+	 * The array and its views belong to this writer and are reused by the next call, so they
+	 * are only valid until then or until {@link #release()} is called.
+	 */
+	public ByteBuffer[] getBuffers() {
+		final int count = chunks.size();
+		if(views.length != count) {
+			views = Arrays.copyOf(views, count);
+			viewSources = Arrays.copyOf(viewSources, count);
+		}
+		for(int i = 0; i < count; ++i) {
+			ByteBuffer chunk = chunks.get(i);
+			if(viewSources[i] != chunk) {
+				views[i] = chunk.asReadOnlyBuffer();
+				viewSources[i] = chunk;
+			}
+			ByteBuffer view = views[i];
+			view.clear();
+			view.limit(chunk.position());
+		}
+		return views;
+	}
+
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		for(ByteBuffer view : getBuffers()) {
+			while(view.hasRemaining()) {
+				channel.write(view);
+			}
+		}
+	}
+
+	public void writeTo(OutputStream outputStream) throws IOException {
+		for(ByteBuffer chunk : chunks) {
+			if(chunk.hasArray()) {
+				outputStream.write(chunk.array(), chunk.arrayOffset(), chunk.position());
+			} else {
+				if(transfer == null) {
+					transfer = new byte[pool.getBufferSize()];
+				}
+				int length = chunk.position();
+				chunk.flip();
+				chunk.get(transfer, 0, length);
+				chunk.limit(chunk.capacity());
+				outputStream.write(transfer, 0, length);
+			}
+		}
+	}
+
+	public byte[] toByteArray() {
+		long size = size();
+		if(size > Integer.MAX_VALUE - 8) {
+			throw new OutOfMemoryError("Written data does not fit in an array ("+size+" bytes)");
+		}
+		byte[] result = new byte[(int) size];
+		int offset = 0;
+		for(ByteBuffer chunk : chunks) {
+			int length = chunk.position();
+			chunk.flip();
+			chunk.get(result, offset, length);
+			chunk.limit(chunk.capacity());
+			offset += length;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all buffers to the pool and resets the writer to an empty state.
+	 */
+	public void release() {
+		// In reverse, so the pool hands the buffers out in the same order next time and the
+		// views cached by getBuffers() still match their slots
+		for(int i = chunks.size() - 1; i >= 0; --i) {
+			pool.release(chunks.get(i));
+		}
+		chunks.clear();
+		current = null;
+		completedBytes = 0;
+	}
+}
@@ -6,11 +6,74 @@ public interface IDataReader {
 	float readFloat() throws IOException;
 	boolean readBoolean() throws IOException;
 	double readDouble() throws IOException;
-	String readUTF() throws IOException;
 	short readShort() throws IOException;
 	long readLong() throws IOException;
 	char readChar() throws IOException;
 	byte readByte() throws IOException;
 	int readInt() throws IOException;
 	void readBytes(byte[] result, int offset, int length) throws IOException;
+	
+	/**
+	 * Reads a string written by {@link IDataWriter#writeUTF(String)}. To read strings in the
+	 * layout used by earlier versions, see {@link LegacyStringDataReader}.
+	 */
+	default String readUTF() throws IOException {
+		return Strings.read(this);
+	}
+	
+	default int readVarInt() throws IOException {
+		return VarInts.read(this);
+	}
+	
+	default long readVarLong() throws IOException {
+		return VarLongs.read(this);
+	}
+	
+	default void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readBoolean();
+		}
+	}
+	
+	default void readShorts(short[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readShort();
+		}
+	}
+	
+	default void readChars(char[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readChar();
+		}
+	}
+	
+	default void readInts(int[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readInt();
+		}
+	}
+	
+	default void readVarInts(int[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readVarInt();
+		}
+	}
+	
+	default void readLongs(long[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readLong();
+		}
+	}
+	
+	default void readFloats(float[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readFloat();
+		}
+	}
+	
+	default void readDoubles(double[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readDouble();
+		}
+	}
 }
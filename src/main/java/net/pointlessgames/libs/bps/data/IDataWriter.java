@@ -6,11 +6,85 @@ public interface IDataWriter {
 	void writeFloat(float value) throws IOException;
 	void writeBoolean(boolean value) throws IOException;
 	void writeDouble(double value) throws IOException;
-	void writeUTF(String value) throws IOException;
 	void writeShort(short value) throws IOException;
 	void writeLong(long value) throws IOException;
 	void writeChar(char value) throws IOException;
 	void writeByte(byte value) throws IOException;
 	void writeInt(int value) throws IOException;
 	void writeBytes(byte[] value) throws IOException;
+	
+	/**
+	 * Writes the byte length of the string as a varint, followed by the string encoded as standard UTF-8.
+	 */
+	default void writeUTF(String value) throws IOException {
+		Strings.write(this, value);
+	}
+	
+	default void writeVarInt(int value) throws IOException {
+		VarInts.write(this, value);
+	}
+	
+	/**
+	 * Writes the value ZigZag encoded as 1 to 9 bytes, so values close to zero are short.
+	 */
+	default void writeVarLong(long value) throws IOException {
+		VarLongs.write(this, value);
+	}
+	
+	default void writeBytes(byte[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeByte(values[i]);
+		}
+	}
+	
+	default void writeBooleans(boolean[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeBoolean(values[i]);
+		}
+	}
+	
+	default void writeShorts(short[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeShort(values[i]);
+		}
+	}
+	
+	default void writeChars(char[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeChar(values[i]);
+		}
+	}
+	
+	default void writeInts(int[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeInt(values[i]);
+		}
+	}
+	
+	default void writeVarInts(int[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeVarInt(values[i]);
+		}
+	}
+	
+	default void writeLongs(long[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeLong(values[i]);
+		}
+	}
+	
+	default void writeFloats(float[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeFloat(values[i]);
+		}
+	}
+	
+	default void writeDoubles(double[] values, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			writeDouble(values[i]);
+		}
+	}
+	
+	default void flush() throws IOException {
+	}
 }
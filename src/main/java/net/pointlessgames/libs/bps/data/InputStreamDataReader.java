@@ -3,9 +3,14 @@ package net.pointlessgames.libs.bps.data;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 public class InputStreamDataReader implements IDataReader {
+	private static final int SCRATCH_SIZE = 4096;
+	
 	private final DataInputStream inputStream;
+	private byte[] scratch;
+	private byte[] stringScratch = null;
 
 	public InputStreamDataReader(InputStream inputStream) {
 		this.inputStream = inputStream instanceof DataInputStream ? (DataInputStream) inputStream : new DataInputStream(inputStream);
@@ -28,7 +33,14 @@ public class InputStreamDataReader implements IDataReader {
 
 	@Override
 	public String readUTF() throws IOException {
-		return inputStream.readUTF();
+		int byteLength = Strings.readLength(this);
+		if(byteLength > Strings.MAX_RETAINED_SCRATCH) {
+			return Strings.readLarge(this, byteLength);
+		}
+		byte[] bytes = Strings.scratch(stringScratch, byteLength);
+		readBytes(bytes, 0, byteLength);
+		stringScratch = Strings.retain(bytes);
+		return new String(bytes, 0, byteLength, StandardCharsets.UTF_8);
 	}
 
 	@Override
@@ -67,4 +79,101 @@ public class InputStreamDataReader implements IDataReader {
 			remaining -= read;
 		}
 	}
+	
+	private byte[] scratch() {
+		if(scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		return scratch;
+	}
+	
+	@Override
+	public void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		for(int i = 0; i < length; i += bytes.length) {
+			int count = Math.min(length - i, bytes.length);
+			inputStream.readFully(bytes, 0, count);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = bytes[j] != 0;
+			}
+		}
+	}
+	
+	@Override
+	public void readShorts(short[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 2;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			inputStream.readFully(bytes, 0, count * 2);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = BigEndian.getShort(bytes, j * 2);
+			}
+		}
+	}
+	
+	@Override
+	public void readChars(char[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 2;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			inputStream.readFully(bytes, 0, count * 2);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = BigEndian.getChar(bytes, j * 2);
+			}
+		}
+	}
+	
+	@Override
+	public void readInts(int[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 4;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			inputStream.readFully(bytes, 0, count * 4);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = BigEndian.getInt(bytes, j * 4);
+			}
+		}
+	}
+	
+	@Override
+	public void readLongs(long[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 8;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			inputStream.readFully(bytes, 0, count * 8);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = BigEndian.getLong(bytes, j * 8);
+			}
+		}
+	}
+	
+	@Override
+	public void readFloats(float[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 4;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			inputStream.readFully(bytes, 0, count * 4);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = Float.intBitsToFloat(BigEndian.getInt(bytes, j * 4));
+			}
+		}
+	}
+	
+	@Override
+	public void readDoubles(double[] result, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 8;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			inputStream.readFully(bytes, 0, count * 8);
+			for(int j = 0; j < count; ++j) {
+				result[offset + i + j] = Double.longBitsToDouble(BigEndian.getLong(bytes, j * 8));
+			}
+		}
+	}
 }
@@ -0,0 +1,353 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Encodes int and long arrays with whichever of a few encodings is smallest for the
+ * given values. The encoded form starts with a one byte tag naming the encoding,
+ * followed by its payload; the array length is not included.
+ * <ul>
+ * <li>{@link #VARINT}: every value as a ZigZag varint.</li>
+ * <li>{@link #DELTA}: the difference to the previous value as a ZigZag varint.</li>
+ * <li>{@link #PACKED}: the minimum, then every value minus the minimum in a fixed number of bits.</li>
+ * <li>{@link #DELTA_PACKED}: like {@link #PACKED}, but for the differences to the previous value.</li>
+ * <li>{@link #RUN_LENGTH}: pairs of value and repeat count.</li>
+ * </ul>
+ * The encoded size of every encoding is computed exactly in a single pass over the values.
+ */
+public final class IntegerArrayCodec {
+	public static final byte VARINT = 0;
+	public static final byte DELTA = 1;
+	public static final byte PACKED = 2;
+	public static final byte DELTA_PACKED = 3;
+	public static final byte RUN_LENGTH = 4;
+
+	private IntegerArrayCodec() {
+	}
+
+	public static byte[] encode(int[] values) {
+		return encode(values.length, i -> values[i]);
+	}
+
+	public static byte[] encode(long[] values) {
+		return encode(values.length, i -> values[i]);
+	}
+
+	private static byte[] encode(final int n, IntToLongFunction values) {
+		if(n == 0) {
+			return new byte[] {VARINT};
+		}
+		long first = values.applyAsLong(0);
+		long min = first;
+		long max = first;
+		long minDelta = 0;
+		long maxDelta = 0;
+		long varintSize = 0;
+		long deltaSize = 0;
+		long runLengthSize = 0;
+		int run = 0;
+		long previous = 0;
+		for(int i = 0; i < n; ++i) {
+			long value = values.applyAsLong(i);
+			long delta = value - previous;
+			varintSize += varLongLength(value);
+			deltaSize += varLongLength(delta);
+			if(value < min) {
+				min = value;
+			} else if(value > max) {
+				max = value;
+			}
+			if(i == 1) {
+				minDelta = delta;
+				maxDelta = delta;
+			} else if(i > 1) {
+				if(delta < minDelta) {
+					minDelta = delta;
+				} else if(delta > maxDelta) {
+					maxDelta = delta;
+				}
+			}
+			if(i > 0 && value != previous) {
+				runLengthSize += varLongLength(previous) + varLongLength(run);
+				run = 0;
+			}
+			run++;
+			previous = value;
+		}
+		runLengthSize += varLongLength(previous) + varLongLength(run);
+		int width = bitWidth(max - min);
+		long packedSize = varLongLength(min) + 1 + packedBytes(n, width);
+		int deltaWidth = bitWidth(maxDelta - minDelta);
+		long deltaPackedSize = varLongLength(first) + varLongLength(minDelta) + 1 + packedBytes(n - 1, deltaWidth);
+
+		byte tag = VARINT;
+		long size = varintSize;
+		if(deltaSize < size) {
+			tag = DELTA;
+			size = deltaSize;
+		}
+		if(packedSize < size) {
+			tag = PACKED;
+			size = packedSize;
+		}
+		if(deltaPackedSize < size) {
+			tag = DELTA_PACKED;
+			size = deltaPackedSize;
+		}
+		if(runLengthSize < size) {
+			tag = RUN_LENGTH;
+			size = runLengthSize;
+		}
+
+		byte[] encoded = new byte[(int) (1 + size)];
+		encoded[0] = tag;
+		int position = 1;
+		switch(tag) {
+			case VARINT: {
+				for(int i = 0; i < n; ++i) {
+					position = VarLongs.encode(encoded, position, values.applyAsLong(i));
+				}
+				break;
+			}
+			case DELTA: {
+				previous = 0;
+				for(int i = 0; i < n; ++i) {
+					long value = values.applyAsLong(i);
+					position = VarLongs.encode(encoded, position, value - previous);
+					previous = value;
+				}
+				break;
+			}
+			case PACKED: {
+				position = VarLongs.encode(encoded, position, min);
+				encoded[position++] = (byte) width;
+				BitPacker packer = new BitPacker(encoded, position);
+				for(int i = 0; i < n; ++i) {
+					packer.write(values.applyAsLong(i) - min, width);
+				}
+				position = packer.finish();
+				break;
+			}
+			case DELTA_PACKED: {
+				position = VarLongs.encode(encoded, position, first);
+				position = VarLongs.encode(encoded, position, minDelta);
+				encoded[position++] = (byte) deltaWidth;
+				BitPacker packer = new BitPacker(encoded, position);
+				previous = first;
+				for(int i = 1; i < n; ++i) {
+					long value = values.applyAsLong(i);
+					packer.write(value - previous - minDelta, deltaWidth);
+					previous = value;
+				}
+				position = packer.finish();
+				break;
+			}
+			default: {
+				int i = 0;
+				while(i < n) {
+					long value = values.applyAsLong(i);
+					int end = i + 1;
+					while(end < n && values.applyAsLong(end) == value) {
+						end++;
+					}
+					position = VarLongs.encode(encoded, position, value);
+					position = VarLongs.encode(encoded, position, end - i);
+					i = end;
+				}
+				break;
+			}
+		}
+		if(position != encoded.length) {
+			throw new IllegalStateException("Encoded "+position+" bytes but expected "+encoded.length);
+		}
+		return encoded;
+	}
+
+	public static int[] decodeInts(byte[] encoded, int length) throws IOException {
+		checkLength(length);
+		int[] values = new int[length];
+		decode(encoded, length, (i, value) -> values[i] = (int) value);
+		return values;
+	}
+
+	public static long[] decodeLongs(byte[] encoded, int length) throws IOException {
+		checkLength(length);
+		long[] values = new long[length];
+		decode(encoded, length, (i, value) -> values[i] = value);
+		return values;
+	}
+
+	private static void checkLength(int length) throws IOException {
+		if(length < 0) {
+			throw new IOException("Negative integer array length "+length);
+		}
+	}
+
+	private static void decode(byte[] encoded, int length, Sink values) throws IOException {
+		if(encoded.length == 0) {
+			throw new IOException("Missing integer array encoding");
+		}
+		Decoder decoder = new Decoder(encoded);
+		try {
+			switch(encoded[0]) {
+				case VARINT: {
+					for(int i = 0; i < length; ++i) {
+						values.set(i, decoder.readVarLong());
+					}
+					break;
+				}
+				case DELTA: {
+					long previous = 0;
+					for(int i = 0; i < length; ++i) {
+						previous += decoder.readVarLong();
+						values.set(i, previous);
+					}
+					break;
+				}
+				case PACKED: {
+					long min = decoder.readVarLong();
+					int width = decoder.readWidth();
+					for(int i = 0; i < length; ++i) {
+						values.set(i, min + decoder.readBits(width));
+					}
+					break;
+				}
+				case DELTA_PACKED: {
+					if(length == 0) {
+						break;
+					}
+					long previous = decoder.readVarLong();
+					long minDelta = decoder.readVarLong();
+					int width = decoder.readWidth();
+					values.set(0, previous);
+					for(int i = 1; i < length; ++i) {
+						previous += minDelta + decoder.readBits(width);
+						values.set(i, previous);
+					}
+					break;
+				}
+				case RUN_LENGTH: {
+					int i = 0;
+					while(i < length) {
+						long value = decoder.readVarLong();
+						long run = decoder.readVarLong();
+						if(run <= 0 || run > length - i) {
+							throw new IOException("Invalid run length "+run);
+						}
+						for(int end = i + (int) run; i < end; ++i) {
+							values.set(i, value);
+						}
+					}
+					break;
+				}
+				default: {
+					throw new IOException("Unknown integer array encoding "+encoded[0]);
+				}
+			}
+		} catch(ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Truncated integer array", e);
+		}
+	}
+
+	private static int varLongLength(long value) {
+		return VarLongs.encodedLength(VarLongs.zigZag(value));
+	}
+
+	private static int bitWidth(long unsignedRange) {
+		return 64 - Long.numberOfLeadingZeros(unsignedRange);
+	}
+
+	private static long packedBytes(int count, int width) {
+		return ((long) count * width + 7) / 8;
+	}
+
+	private interface Sink {
+		void set(int index, long value);
+	}
+
+	/**
+	 * Writes values of up to 64 bits, lowest bits first, filling every byte from its lowest bit.
+	 */
+	private static class BitPacker {
+		private final byte[] buffer;
+		private int position;
+		private int current = 0;
+		private int bits = 0;
+
+		public BitPacker(byte[] buffer, int position) {
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		public void write(long value, int width) {
+			int written = 0;
+			while(written < width) {
+				int take = Math.min(width - written, 8 - bits);
+				current |= (int) ((value >>> written) & ((1 << take) - 1)) << bits;
+				bits += take;
+				written += take;
+				if(bits == 8) {
+					buffer[position++] = (byte) current;
+					current = 0;
+					bits = 0;
+				}
+			}
+		}
+
+		public int finish() {
+			if(bits > 0) {
+				buffer[position++] = (byte) current;
+				current = 0;
+				bits = 0;
+			}
+			return position;
+		}
+	}
+
+	private static class Decoder {
+		private final byte[] buffer;
+		private int position = 1;
+		private int current = 0;
+		private int bits = 0;
+
+		public Decoder(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		public long readVarLong() {
+			int length = VarLongs.length(buffer[position]);
+			if(position + length > buffer.length) {
+				throw new ArrayIndexOutOfBoundsException(position + length);
+			}
+			long value = VarLongs.decode(buffer, position, length);
+			position += length;
+			return value;
+		}
+
+		public int readWidth() throws IOException {
+			int width = buffer[position++];
+			if(width < 0 || width > 64) {
+				throw new IOException("Invalid bit width "+width);
+			}
+			return width;
+		}
+
+		public long readBits(int width) {
+			long value = 0;
+			int read = 0;
+			while(read < width) {
+				if(bits == 0) {
+					current = buffer[position++] & 0xFF;
+					bits = 8;
+				}
+				int take = Math.min(width - read, bits);
+				value |= (long) (current & ((1 << take) - 1)) << read;
+				current >>>= take;
+				bits -= take;
+				read += take;
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads strings in one of the layouts used before all backends shared a single string format.
+ * Everything else is read by the wrapped reader.
+ */
+public class LegacyStringDataReader implements IDataReader {
+	private final IDataReader delegate;
+	private final LegacyStringFormat format;
+
+	public LegacyStringDataReader(IDataReader delegate, LegacyStringFormat format) {
+		if(delegate == null) {
+			throw new NullPointerException("delegate is null");
+		}
+		if(format == null) {
+			throw new NullPointerException("format is null");
+		}
+		this.delegate = delegate;
+		this.format = format;
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		switch(format) {
+			case DATA_STREAM: {
+				int byteLength = delegate.readShort() & 0xFFFF;
+				byte[] bytes = new byte[byteLength];
+				delegate.readBytes(bytes, 0, byteLength);
+				return ModifiedUtf8.decode(bytes, 0, byteLength);
+			}
+			case BYTE_BUFFER: {
+				int byteLength = delegate.readInt();
+				if(byteLength < 0) {
+					throw new IOException("Invalid string length "+byteLength);
+				}
+				byte[] bytes = new byte[byteLength];
+				delegate.readBytes(bytes, 0, byteLength);
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+			default: {
+				throw new IllegalStateException("Unknown format "+format);
+			}
+		}
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return delegate.readFloat();
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return delegate.readBoolean();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return delegate.readDouble();
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return delegate.readShort();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return delegate.readLong();
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return delegate.readChar();
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return delegate.readByte();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return delegate.readInt();
+	}
+
+	@Override
+	public int readVarInt() throws IOException {
+		return delegate.readVarInt();
+	}
+
+	@Override
+	public long readVarLong() throws IOException {
+		return delegate.readVarLong();
+	}
+
+	@Override
+	public void readBytes(byte[] result, int offset, int length) throws IOException {
+		delegate.readBytes(result, offset, length);
+	}
+
+	@Override
+	public void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		delegate.readBooleans(result, offset, length);
+	}
+
+	@Override
+	public void readShorts(short[] result, int offset, int length) throws IOException {
+		delegate.readShorts(result, offset, length);
+	}
+
+	@Override
+	public void readChars(char[] result, int offset, int length) throws IOException {
+		delegate.readChars(result, offset, length);
+	}
+
+	@Override
+	public void readInts(int[] result, int offset, int length) throws IOException {
+		delegate.readInts(result, offset, length);
+	}
+
+	@Override
+	public void readVarInts(int[] result, int offset, int length) throws IOException {
+		delegate.readVarInts(result, offset, length);
+	}
+
+	@Override
+	public void readLongs(long[] result, int offset, int length) throws IOException {
+		delegate.readLongs(result, offset, length);
+	}
+
+	@Override
+	public void readFloats(float[] result, int offset, int length) throws IOException {
+		delegate.readFloats(result, offset, length);
+	}
+
+	@Override
+	public void readDoubles(double[] result, int offset, int length) throws IOException {
+		delegate.readDoubles(result, offset, length);
+	}
+}
@@ -0,0 +1,13 @@
+package net.pointlessgames.libs.bps.data;
+
+public enum LegacyStringFormat {
+	/**
+	 * A 2 byte length followed by modified UTF-8, as written by {@link java.io.DataOutputStream#writeUTF(String)}.
+	 * Used by {@link OutputStreamDataWriter}, and thereby by contexts created from an {@link java.io.OutputStream}.
+	 */
+	DATA_STREAM,
+	/**
+	 * A 4 byte length followed by standard UTF-8. Used by {@link ByteBufferDataWriter}.
+	 */
+	BYTE_BUFFER
+}
@@ -0,0 +1,281 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the data layout of {@link ByteBufferDataReader} from a memory mapped file.
+ * Files larger than a single mapping are mapped one segment at a time, and values
+ * straddling two segments are read across the boundary.
+ */
+public class MappedFileDataReader implements IDataReader, Closeable {
+	public static final int DEFAULT_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final int segmentSize;
+	private ByteBuffer segment;
+	private long segmentStart;
+	private byte[] stringScratch = null;
+
+	public MappedFileDataReader(Path file) throws IOException {
+		this(file, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public MappedFileDataReader(Path file, int segmentSize) throws IOException {
+		if(segmentSize <= 0) {
+			throw new IllegalArgumentException("Segment size must be positive (was "+segmentSize+")");
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.segmentSize = segmentSize;
+		try {
+			this.fileSize = channel.size();
+			mapSegment(0);
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void mapSegment(long start) throws IOException {
+		long length = Math.min(segmentSize, fileSize - start);
+		segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		segmentStart = start;
+	}
+
+	private ByteBuffer nextSegment() throws IOException {
+		long nextStart = segmentStart + segment.limit();
+		if(nextStart >= fileSize) {
+			throw new EOFException();
+		}
+		mapSegment(nextStart);
+		return segment;
+	}
+
+	private long readStraddling(int bytes) throws IOException {
+		long value = 0;
+		for(int i = 0; i < bytes; ++i) {
+			value = (value << 8) | (readByte() & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the offset in the file of the next byte to be read.
+	 */
+	public long position() {
+		return segmentStart + segment.position();
+	}
+
+	public long size() {
+		return fileSize;
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() == 1;
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		int byteLength = Strings.readLength(this);
+		if(byteLength > Strings.MAX_RETAINED_SCRATCH) {
+			return Strings.readLarge(this, byteLength);
+		}
+		byte[] bytes = Strings.scratch(stringScratch, byteLength);
+		readBytes(bytes, 0, byteLength);
+		stringScratch = Strings.retain(bytes);
+		return new String(bytes, 0, byteLength, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		if(segment.remaining() >= 2) {
+			return segment.getShort();
+		}
+		return (short) readStraddling(2);
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		if(segment.remaining() >= 8) {
+			return segment.getLong();
+		}
+		return readStraddling(8);
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		if(segment.remaining() >= 2) {
+			return segment.getChar();
+		}
+		return (char) readStraddling(2);
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		ByteBuffer buffer = segment;
+		if(!buffer.hasRemaining()) {
+			buffer = nextSegment();
+		}
+		return buffer.get();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		if(segment.remaining() >= 4) {
+			return segment.getInt();
+		}
+		return (int) readStraddling(4);
+	}
+
+	@Override
+	public void readBytes(byte[] result, int offset, int length) throws IOException {
+		int remaining = length;
+		while(remaining > 0) {
+			ByteBuffer buffer = segment;
+			if(!buffer.hasRemaining()) {
+				buffer = nextSegment();
+			}
+			int chunk = Math.min(buffer.remaining(), remaining);
+			buffer.get(result, offset + length - remaining, chunk);
+			remaining -= chunk;
+		}
+	}
+
+	@Override
+	public void readBooleans(boolean[] result, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; ++i) {
+			result[i] = readByte() == 1;
+		}
+	}
+
+	/**
+	 * @return how many values of the given width can be read from the current segment.
+	 * Zero means the next value straddles into the next segment.
+	 */
+	private int available(int width) throws IOException {
+		ByteBuffer buffer = segment;
+		if(!buffer.hasRemaining()) {
+			buffer = nextSegment();
+		}
+		return buffer.remaining() / width;
+	}
+
+	@Override
+	public void readShorts(short[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(available(2), end - i);
+			if(count == 0) {
+				result[i++] = readShort();
+			} else {
+				segment.asShortBuffer().get(result, i, count);
+				segment.position(segment.position() + count * 2);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void readChars(char[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(available(2), end - i);
+			if(count == 0) {
+				result[i++] = readChar();
+			} else {
+				segment.asCharBuffer().get(result, i, count);
+				segment.position(segment.position() + count * 2);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void readInts(int[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(available(4), end - i);
+			if(count == 0) {
+				result[i++] = readInt();
+			} else {
+				segment.asIntBuffer().get(result, i, count);
+				segment.position(segment.position() + count * 4);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void readLongs(long[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(available(8), end - i);
+			if(count == 0) {
+				result[i++] = readLong();
+			} else {
+				segment.asLongBuffer().get(result, i, count);
+				segment.position(segment.position() + count * 8);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void readFloats(float[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(available(4), end - i);
+			if(count == 0) {
+				result[i++] = readFloat();
+			} else {
+				segment.asFloatBuffer().get(result, i, count);
+				segment.position(segment.position() + count * 4);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void readDoubles(double[] result, int offset, int length) throws IOException {
+		final int end = offset + length;
+		int i = offset;
+		while(i < end) {
+			int count = Math.min(available(8), end - i);
+			if(count == 0) {
+				result[i++] = readDouble();
+			} else {
+				segment.asDoubleBuffer().get(result, i, count);
+				segment.position(segment.position() + count * 8);
+				i += count;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
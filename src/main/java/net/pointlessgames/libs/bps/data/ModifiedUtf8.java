@@ -0,0 +1,46 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.UTFDataFormatException;
+
+/**
+ * The string layout of {@link java.io.DataOutputStream#writeUTF(String)}.
+ */
+/*package-protected*/ class ModifiedUtf8 {
+	public static String decode(byte[] bytes, int offset, int length) throws UTFDataFormatException {
+		char[] chars = new char[length];
+		int charCount = 0;
+		int position = offset;
+		final int end = offset + length;
+		while(position < end) {
+			int c = bytes[position] & 0xFF;
+			if(c < 0x80) {
+				chars[charCount++] = (char) c;
+				position++;
+			} else if((c >> 5) == 0b110) {
+				if(position + 2 > end) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				int c2 = bytes[position + 1];
+				if((c2 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte "+(position - offset));
+				}
+				chars[charCount++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+				position += 2;
+			} else if((c >> 4) == 0b1110) {
+				if(position + 3 > end) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				int c2 = bytes[position + 1];
+				int c3 = bytes[position + 2];
+				if((c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte "+(position - offset));
+				}
+				chars[charCount++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+				position += 3;
+			} else {
+				throw new UTFDataFormatException("malformed input around byte "+(position - offset));
+			}
+		}
+		return new String(chars, 0, charCount);
+	}
+}
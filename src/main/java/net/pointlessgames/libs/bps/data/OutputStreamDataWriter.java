@@ -5,7 +5,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 public class OutputStreamDataWriter implements IDataWriter {
+	private static final int SCRATCH_SIZE = 4096;
+	
 	private final DataOutputStream outputStream;
+	private byte[] scratch;
 	
 	public OutputStreamDataWriter(OutputStream outputStream) {
 		this.outputStream = outputStream instanceof DataOutputStream ? (DataOutputStream) outputStream : new DataOutputStream(outputStream);
@@ -26,11 +29,6 @@ public class OutputStreamDataWriter implements IDataWriter {
 		outputStream.writeDouble(value);
 	}
 
-	@Override
-	public void writeUTF(String value) throws IOException {
-		outputStream.writeUTF(value);
-	}
-
 	@Override
 	public void writeShort(short value) throws IOException {
 		outputStream.writeShort(value);
@@ -60,4 +58,138 @@ public class OutputStreamDataWriter implements IDataWriter {
 	public void writeBytes(byte[] value) throws IOException {
 		outputStream.write(value);
 	}
+	
+	@Override
+	public void writeBytes(byte[] values, int offset, int length) throws IOException {
+		outputStream.write(values, offset, length);
+	}
+	
+	private byte[] scratch() {
+		if(scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		return scratch;
+	}
+	
+	@Override
+	public void writeUTF(String value) throws IOException {
+		writeVarInt(Strings.encodedLength(value));
+		byte[] bytes = scratch();
+		final int length = value.length();
+		int i = 0;
+		while(i < length) {
+			int to = Strings.chunkEnd(value, i, bytes.length);
+			outputStream.write(bytes, 0, Strings.encode(value, i, to, bytes, 0));
+			i = to;
+		}
+	}
+	
+	@Override
+	public void writeBooleans(boolean[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		for(int i = 0; i < length; i += bytes.length) {
+			int count = Math.min(length - i, bytes.length);
+			for(int j = 0; j < count; ++j) {
+				bytes[j] = (byte) (values[offset + i + j] ? 1 : 0);
+			}
+			outputStream.write(bytes, 0, count);
+		}
+	}
+	
+	@Override
+	public void writeShorts(short[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 2;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putShort(bytes, j * 2, values[offset + i + j]);
+			}
+			outputStream.write(bytes, 0, count * 2);
+		}
+	}
+	
+	@Override
+	public void writeChars(char[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 2;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putShort(bytes, j * 2, values[offset + i + j]);
+			}
+			outputStream.write(bytes, 0, count * 2);
+		}
+	}
+	
+	@Override
+	public void writeInts(int[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 4;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putInt(bytes, j * 4, values[offset + i + j]);
+			}
+			outputStream.write(bytes, 0, count * 4);
+		}
+	}
+	
+	@Override
+	public void writeVarInts(int[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / VarInts.MAX_BYTES;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			int position = 0;
+			for(int j = 0; j < count; ++j) {
+				position = VarInts.encode(bytes, position, values[offset + i + j]);
+			}
+			outputStream.write(bytes, 0, position);
+		}
+	}
+	
+	@Override
+	public void writeLongs(long[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 8;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putLong(bytes, j * 8, values[offset + i + j]);
+			}
+			outputStream.write(bytes, 0, count * 8);
+		}
+	}
+	
+	@Override
+	public void writeFloats(float[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 4;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putInt(bytes, j * 4, Float.floatToIntBits(values[offset + i + j]));
+			}
+			outputStream.write(bytes, 0, count * 4);
+		}
+	}
+	
+	@Override
+	public void writeDoubles(double[] values, int offset, int length) throws IOException {
+		byte[] bytes = scratch();
+		final int perChunk = bytes.length / 8;
+		for(int i = 0; i < length; i += perChunk) {
+			int count = Math.min(length - i, perChunk);
+			for(int j = 0; j < count; ++j) {
+				BigEndian.putLong(bytes, j * 8, Double.doubleToLongBits(values[offset + i + j]));
+			}
+			outputStream.write(bytes, 0, count * 8);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		outputStream.flush();
+	}
 }
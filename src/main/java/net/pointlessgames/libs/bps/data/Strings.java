@@ -0,0 +1,152 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*package-protected*/ class Strings {
+	/**
+	 * No char takes more than 3 bytes. Surrogate pairs take 4 bytes for 2 chars.
+	 */
+	public static final int MAX_BYTES_PER_CHAR = 3;
+	/**
+	 * Scratch arrays larger than this are not kept between strings.
+	 */
+	public static final int MAX_RETAINED_SCRATCH = 1 << 16;
+	private static final byte REPLACEMENT = '?';
+
+	public static void write(IDataWriter out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeVarInt(bytes.length);
+		out.writeBytes(bytes);
+	}
+
+	public static String read(IDataReader in) throws IOException {
+		int byteLength = readLength(in);
+		byte[] bytes = new byte[byteLength];
+		in.readBytes(bytes, 0, byteLength);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static int readLength(IDataReader in) throws IOException {
+		int byteLength = in.readVarInt();
+		if(byteLength < 0) {
+			throw new IOException("Invalid string length "+byteLength);
+		}
+		return byteLength;
+	}
+
+	/**
+	 * @return the number of bytes {@link #encode(String, int, int, byte[], int)} produces for the whole string.
+	 * Unpaired surrogates are counted as the single byte they are replaced with, just like {@link String#getBytes(java.nio.charset.Charset)}.
+	 */
+	public static int encodedLength(String value) {
+		final int length = value.length();
+		int byteLength = length;
+		int i = 0;
+		while(i < length && value.charAt(i) < 0x80) {
+			i++;
+		}
+		for(; i < length; ++i) {
+			char c = value.charAt(i);
+			if(c < 0x80) {
+				continue;
+			} else if(c < 0x800) {
+				byteLength += 1;
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				byteLength += 2;
+				i++;
+			} else if(!Character.isSurrogate(c)) {
+				byteLength += 2;
+			}
+		}
+		return byteLength;
+	}
+
+	/**
+	 * Encodes the chars in [from, to) as UTF-8 into the buffer. The caller must make sure the encoded chars fit,
+	 * which is at most {@link #MAX_BYTES_PER_CHAR} bytes per char, and that <code>to</code> does not split a surrogate pair.
+	 * @return the position after the last byte written.
+	 */
+	public static int encode(String value, int from, int to, byte[] buffer, int position) {
+		int i = from;
+		while(i < to) {
+			char c = value.charAt(i);
+			if(c >= 0x80) {
+				break;
+			}
+			buffer[position++] = (byte) c;
+			i++;
+		}
+		for(; i < to; ++i) {
+			char c = value.charAt(i);
+			if(c < 0x80) {
+				buffer[position++] = (byte) c;
+			} else if(c < 0x800) {
+				buffer[position++] = (byte) (0xC0 | (c >> 6));
+				buffer[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if(Character.isSurrogate(c)) {
+				if(Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+					buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+				} else {
+					buffer[position++] = REPLACEMENT;
+				}
+			} else {
+				buffer[position++] = (byte) (0xE0 | (c >> 12));
+				buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * @return the end of the next run of chars, starting at <code>from</code>, that is guaranteed to fit in
+	 * <code>room</code> bytes without splitting a surrogate pair. Equals <code>from</code> if room is too small.
+	 */
+	public static int chunkEnd(String value, int from, int room) {
+		int to = Math.min(value.length(), from + room / MAX_BYTES_PER_CHAR);
+		if(to > from && to < value.length() && Character.isHighSurrogate(value.charAt(to - 1))) {
+			to--;
+		}
+		return to;
+	}
+
+	public static byte[] scratch(byte[] scratch, int minSize) {
+		if(scratch != null && scratch.length >= minSize) {
+			return scratch;
+		}
+		long size = scratch == null ? 256 : scratch.length;
+		while(size < minSize) {
+			size *= 2;
+		}
+		return new byte[(int) Math.min(size, Math.max(minSize, MAX_RETAINED_SCRATCH))];
+	}
+
+	/**
+	 * Reads a string longer than {@link #MAX_RETAINED_SCRATCH} bytes. The array grows with the
+	 * data actually read, so a corrupt length runs into the end of the data instead of
+	 * allocating that length up front.
+	 */
+	public static String readLarge(IDataReader in, int byteLength) throws IOException {
+		byte[] bytes = new byte[Math.min(byteLength, MAX_RETAINED_SCRATCH)];
+		int read = 0;
+		while(read < byteLength) {
+			if(read == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(bytes.length * 2L, byteLength));
+			}
+			int chunk = bytes.length - read;
+			in.readBytes(bytes, read, chunk);
+			read += chunk;
+		}
+		return new String(bytes, 0, byteLength, StandardCharsets.UTF_8);
+	}
+
+	public static byte[] retain(byte[] scratch) {
+		return scratch.length > MAX_RETAINED_SCRATCH ? null : scratch;
+	}
+}
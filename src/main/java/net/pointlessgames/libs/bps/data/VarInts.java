@@ -0,0 +1,136 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+
+/*package-protected*/ class VarInts {
+	public static final int MAX_BYTES = 5;
+
+	public static void write(IDataWriter out, int i) throws IOException {
+		if(i <= 63 && i >= -64) {
+			out.writeByte((byte) (i & 0b01111111));
+		} else if(i <= 8191 && i >= -8192) {
+			out.writeByte((byte) (((i >> 8) & 0b00111111) | 0b10000000));
+			out.writeByte((byte) i);
+		} else if(i <= 1048575 && i >= -1048576) {
+			out.writeByte((byte) (((i >> (2*8)) & 0b00011111) | 0b11000000));
+			out.writeByte((byte) (i >> 8));
+			out.writeByte((byte) i);
+		} else if(i <= 134217727 && i >= -134217728) {
+			out.writeByte((byte) (((i >> (3*8)) & 0b00001111) | 0b11100000));
+			out.writeByte((byte) (i >> (2*8)));
+			out.writeByte((byte) (i >> 8));
+			out.writeByte((byte) i);
+		} else {
+			out.writeByte((byte) (0b11110000));
+			out.writeByte((byte) (i >> (3*8)));
+			out.writeByte((byte) (i >> (2*8)));
+			out.writeByte((byte) (i >> 8));
+			out.writeByte((byte) i);
+		}
+	}
+
+	public static int encode(byte[] buffer, int position, int i) {
+		if(i <= 63 && i >= -64) {
+			buffer[position] = (byte) (i & 0b01111111);
+			return position + 1;
+		} else if(i <= 8191 && i >= -8192) {
+			buffer[position] = (byte) (((i >> 8) & 0b00111111) | 0b10000000);
+			buffer[position + 1] = (byte) i;
+			return position + 2;
+		} else if(i <= 1048575 && i >= -1048576) {
+			buffer[position] = (byte) (((i >> (2*8)) & 0b00011111) | 0b11000000);
+			buffer[position + 1] = (byte) (i >> 8);
+			buffer[position + 2] = (byte) i;
+			return position + 3;
+		} else if(i <= 134217727 && i >= -134217728) {
+			buffer[position] = (byte) (((i >> (3*8)) & 0b00001111) | 0b11100000);
+			buffer[position + 1] = (byte) (i >> (2*8));
+			buffer[position + 2] = (byte) (i >> 8);
+			buffer[position + 3] = (byte) i;
+			return position + 4;
+		} else {
+			buffer[position] = (byte) (0b11110000);
+			buffer[position + 1] = (byte) (i >> (3*8));
+			buffer[position + 2] = (byte) (i >> (2*8));
+			buffer[position + 3] = (byte) (i >> 8);
+			buffer[position + 4] = (byte) i;
+			return position + 5;
+		}
+	}
+
+	public static int read(IDataReader in) throws IOException {
+		byte b1 = in.readByte();
+		if((b1 & 0b10000000) == 0) {
+			// 7 bytes
+			int val = b1 & 0b00111111;
+			if((b1 & 0b01000000) != 0) {
+				val = 0b11111111111111111111111110000000 | b1;
+			}
+			return val;
+		} else if((b1 & 0b01000000) == 0) {
+			// 14 bytes
+			byte b2 = in.readByte();
+			int val = toInt(b2) | ((b1 & 0b00011111) << 8);
+			if((b1 & 0b00100000) != 0) {
+				val = 0b11111111111111111110000000000000 | val;
+			}
+			return val;
+		} else if((b1 & 0b00100000) == 0) {
+			// 21 bytes
+			byte b2 = in.readByte();
+			byte b3 = in.readByte();
+			int val = toInt(b3) | (toInt(b2) << 8) | ((b1 & 0b00001111) << 16);
+			if((b1 & 0b00010000) != 0) {
+				val = 0b11111111111100000000000000000000 | val;
+			}
+			return val;
+		} else if((b1 & 0b00010000) == 0) {
+			// 28 bytes
+			byte b2 = in.readByte();
+			byte b3 = in.readByte();
+			byte b4 = in.readByte();
+			int val = toInt(b4) | (toInt(b3) << 8) | (toInt(b2) << 16) | ((b1 & 0b00000111) << 24);
+			if((b1 & 0b00001000) != 0) {
+				val = 0b11111000000000000000000000000000 | val;
+			}
+			return val;
+		} else {
+			byte b2 = in.readByte();
+			byte b3 = in.readByte();
+			byte b4 = in.readByte();
+			byte b5 = in.readByte();
+			return toInt(b5) | (toInt(b4) << 8) | (toInt(b3) << 16) | (toInt(b2) << 24);
+		}
+	}
+	
+	public static int length(byte first) {
+		return Math.min(Integer.numberOfLeadingZeros(~(first << 24)) + 1, MAX_BYTES);
+	}
+	
+	public static int decode(byte[] buffer, int position, int length) {
+		switch(length) {
+			case 1: {
+				return (buffer[position] << 25) >> 25;
+			}
+			case 2: {
+				int raw = ((buffer[position] & 0b00111111) << 8) | toInt(buffer[position + 1]);
+				return (raw << 18) >> 18;
+			}
+			case 3: {
+				int raw = ((buffer[position] & 0b00011111) << 16) | (toInt(buffer[position + 1]) << 8) | toInt(buffer[position + 2]);
+				return (raw << 11) >> 11;
+			}
+			case 4: {
+				int raw = ((buffer[position] & 0b00001111) << 24) | (toInt(buffer[position + 1]) << 16) | (toInt(buffer[position + 2]) << 8) | toInt(buffer[position + 3]);
+				return (raw << 4) >> 4;
+			}
+			default: {
+				return (toInt(buffer[position + 1]) << 24) | (toInt(buffer[position + 2]) << 16) | (toInt(buffer[position + 3]) << 8) | toInt(buffer[position + 4]);
+			}
+		}
+	}
+
+	private static int toInt(byte b) {
+		return 0b11111111 & b;
+	}
+}
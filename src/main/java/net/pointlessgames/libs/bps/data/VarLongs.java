@@ -0,0 +1,77 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+
+/**
+ * ZigZag encoded longs in the prefix style of {@link VarInts}: the number of leading
+ * one bits in the first byte is the number of bytes that follow, and the remaining
+ * bits of the first byte are the most significant bits of the value.
+ * <code>11111111</code> is followed by all 8 bytes.
+ */
+/*package-protected*/ class VarLongs {
+	public static final int MAX_BYTES = 9;
+
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * @return the number of bytes needed for an already zigzag encoded value.
+	 */
+	public static int encodedLength(long zigZagged) {
+		int bits = 64 - Long.numberOfLeadingZeros(zigZagged);
+		return bits <= 56 ? Math.max(1, (bits + 6) / 7) : MAX_BYTES;
+	}
+
+	public static void write(IDataWriter out, long value) throws IOException {
+		long zigZagged = zigZag(value);
+		int extra = encodedLength(zigZagged) - 1;
+		out.writeByte(firstByte(zigZagged, extra));
+		for(int shift = (extra - 1) * 8; shift >= 0; shift -= 8) {
+			out.writeByte((byte) (zigZagged >>> shift));
+		}
+	}
+
+	public static int encode(byte[] buffer, int position, long value) {
+		long zigZagged = zigZag(value);
+		int extra = encodedLength(zigZagged) - 1;
+		buffer[position++] = firstByte(zigZagged, extra);
+		for(int shift = (extra - 1) * 8; shift >= 0; shift -= 8) {
+			buffer[position++] = (byte) (zigZagged >>> shift);
+		}
+		return position;
+	}
+
+	private static byte firstByte(long zigZagged, int extra) {
+		if(extra == MAX_BYTES - 1) {
+			return (byte) 0b11111111;
+		}
+		return (byte) ((0xFF00 >> extra) | (zigZagged >>> (8 * extra)));
+	}
+
+	public static long read(IDataReader in) throws IOException {
+		byte first = in.readByte();
+		int length = length(first);
+		long value = first & (0b01111111 >> (length - 1));
+		for(int i = 1; i < length; ++i) {
+			value = (value << 8) | (in.readByte() & 0xFF);
+		}
+		return unZigZag(value);
+	}
+
+	public static int length(byte first) {
+		return Integer.numberOfLeadingZeros(~first & 0xFF) - 23;
+	}
+
+	public static long decode(byte[] buffer, int position, int length) {
+		long value = buffer[position] & (0b01111111 >> (length - 1));
+		for(int i = 1; i < length; ++i) {
+			value = (value << 8) | (buffer[position + i] & 0xFF);
+		}
+		return unZigZag(value);
+	}
+}
@@ -0,0 +1,233 @@
+package net.pointlessgames.libs.bps.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses float and double arrays of slowly changing values by storing each value
+ * as the XOR with its predecessor, in the style of Facebook's Gorilla time series database.
+ * <p>
+ * The first value is stored raw. For every following value the bit stream contains
+ * <ul>
+ * <li><code>0</code> if it is equal to the previous value,</li>
+ * <li><code>10</code> and the meaningful bits of the XOR, if they fit in the window of leading and
+ * trailing zeros used last,</li>
+ * <li><code>11</code>, the number of leading zeros, the number of meaningful bits minus one and the
+ * meaningful bits otherwise. Both counts take 6 bits for doubles and 5 bits for floats.</li>
+ * </ul>
+ * Bits are written most significant first. The array length is not included.
+ */
+public final class XorFloatingPointCodec {
+	private XorFloatingPointCodec() {
+	}
+
+	public static byte[] encode(double[] values) {
+		BitWriter out = new BitWriter(values.length);
+		if(values.length > 0) {
+			XorEncoder encoder = new XorEncoder(out, 64, 6);
+			long previous = Double.doubleToRawLongBits(values[0]);
+			out.write(previous, 64);
+			for(int i = 1; i < values.length; ++i) {
+				long bits = Double.doubleToRawLongBits(values[i]);
+				encoder.append(bits ^ previous);
+				previous = bits;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	public static byte[] encode(float[] values) {
+		BitWriter out = new BitWriter(values.length);
+		if(values.length > 0) {
+			XorEncoder encoder = new XorEncoder(out, 32, 5);
+			int previous = Float.floatToRawIntBits(values[0]);
+			out.write(previous, 32);
+			for(int i = 1; i < values.length; ++i) {
+				int bits = Float.floatToRawIntBits(values[i]);
+				encoder.append((bits ^ previous) & 0xFFFFFFFFL);
+				previous = bits;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	public static double[] decodeDoubles(byte[] encoded, int length) throws IOException {
+		checkLength(length);
+		double[] values = new double[length];
+		if(length > 0) {
+			XorDecoder decoder = new XorDecoder(encoded, 64, 6);
+			try {
+				long previous = decoder.in.read(64);
+				values[0] = Double.longBitsToDouble(previous);
+				for(int i = 1; i < length; ++i) {
+					previous ^= decoder.next();
+					values[i] = Double.longBitsToDouble(previous);
+				}
+			} catch(ArrayIndexOutOfBoundsException e) {
+				throw new IOException("Truncated double array", e);
+			}
+		}
+		return values;
+	}
+
+	public static float[] decodeFloats(byte[] encoded, int length) throws IOException {
+		checkLength(length);
+		float[] values = new float[length];
+		if(length > 0) {
+			XorDecoder decoder = new XorDecoder(encoded, 32, 5);
+			try {
+				int previous = (int) decoder.in.read(32);
+				values[0] = Float.intBitsToFloat(previous);
+				for(int i = 1; i < length; ++i) {
+					previous ^= (int) decoder.next();
+					values[i] = Float.intBitsToFloat(previous);
+				}
+			} catch(ArrayIndexOutOfBoundsException e) {
+				throw new IOException("Truncated float array", e);
+			}
+		}
+		return values;
+	}
+
+	private static void checkLength(int length) throws IOException {
+		if(length < 0) {
+			throw new IOException("Negative floating point array length "+length);
+		}
+	}
+
+	private static class XorEncoder {
+		private final BitWriter out;
+		private final int width;
+		private final int countBits;
+		private int previousLeading = -1;
+		private int previousTrailing = 0;
+
+		public XorEncoder(BitWriter out, int width, int countBits) {
+			this.out = out;
+			this.width = width;
+			this.countBits = countBits;
+		}
+
+		public void append(long xor) {
+			if(xor == 0) {
+				out.write(0b0, 1);
+				return;
+			}
+			int leading = Long.numberOfLeadingZeros(xor) - (64 - width);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if(previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+				out.write(0b10, 2);
+				out.write(xor >>> previousTrailing, width - previousLeading - previousTrailing);
+			} else {
+				int length = width - leading - trailing;
+				out.write(0b11, 2);
+				out.write(leading, countBits);
+				out.write(length - 1, countBits);
+				out.write(xor >>> trailing, length);
+				previousLeading = leading;
+				previousTrailing = trailing;
+			}
+		}
+	}
+
+	private static class XorDecoder {
+		private final BitReader in;
+		private final int width;
+		private final int countBits;
+		private int previousLeading = -1;
+		private int previousTrailing = 0;
+
+		public XorDecoder(byte[] encoded, int width, int countBits) {
+			this.in = new BitReader(encoded);
+			this.width = width;
+			this.countBits = countBits;
+		}
+
+		public long next() throws IOException {
+			if(in.read(1) == 0) {
+				return 0;
+			}
+			if(in.read(1) == 0) {
+				if(previousLeading < 0) {
+					throw new IOException("XOR window used before it was defined");
+				}
+				return in.read(width - previousLeading - previousTrailing) << previousTrailing;
+			}
+			int leading = (int) in.read(countBits);
+			int length = (int) in.read(countBits) + 1;
+			int trailing = width - leading - length;
+			if(trailing < 0) {
+				throw new IOException("Invalid XOR window "+leading+"+"+length);
+			}
+			previousLeading = leading;
+			previousTrailing = trailing;
+			return in.read(length) << trailing;
+		}
+	}
+
+	private static class BitWriter {
+		private byte[] buffer;
+		private int position = 0;
+		private int current = 0;
+		private int bits = 0;
+
+		public BitWriter(int expectedValues) {
+			this.buffer = new byte[Math.max(16, expectedValues * 2)];
+		}
+
+		/**
+		 * Writes the lowest <code>width</code> bits of the value, most significant first.
+		 */
+		public void write(long value, int width) {
+			while(width > 0) {
+				int take = Math.min(width, 8 - bits);
+				int chunk = (int) (value >>> (width - take)) & ((1 << take) - 1);
+				current = (current << take) | chunk;
+				bits += take;
+				width -= take;
+				if(bits == 8) {
+					if(position == buffer.length) {
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					}
+					buffer[position++] = (byte) current;
+					current = 0;
+					bits = 0;
+				}
+			}
+		}
+
+		public byte[] toByteArray() {
+			if(bits > 0) {
+				write(0, 8 - bits);
+			}
+			return Arrays.copyOf(buffer, position);
+		}
+	}
+
+	private static class BitReader {
+		private final byte[] buffer;
+		private int position = 0;
+		private int current = 0;
+		private int bits = 0;
+
+		public BitReader(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		public long read(int width) {
+			long value = 0;
+			while(width > 0) {
+				if(bits == 0) {
+					current = buffer[position++] & 0xFF;
+					bits = 8;
+				}
+				int take = Math.min(width, bits);
+				int chunk = (current >>> (bits - take)) & ((1 << take) - 1);
+				value = (value << take) | chunk;
+				bits -= take;
+				width -= take;
+			}
+			return value;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package net.pointlessgames.libs.bps.debugutil;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Stack;
 
 import net.pointlessgames.libs.bps.ISerializer;
@@ -110,6 +111,14 @@ public class DebugSerializationContext extends SerializationContext {
 		debuggerPrinter.unpause();
 	}
 	
+	@Override
+	public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		debuggerPrinter.println("BYTES: "+Arrays.toString(Arrays.copyOfRange(bytes, offset, offset + length)));
+		debuggerPrinter.pause();
+		super.writeBytes(bytes, offset, length);
+		debuggerPrinter.unpause();
+	}
+	
 	@Override
 	public void writeBoolean(boolean b) throws IOException {
 		debuggerPrinter.println("BOOLEAN: "+b);
@@ -118,6 +127,94 @@ public class DebugSerializationContext extends SerializationContext {
 		debuggerPrinter.unpause();
 	}
 	
+	@Override
+	public void writeFloatArray(float[] array) throws IOException {
+		debuggerPrinter.println("FLOAT_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeFloatArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeIntArray(int[] array) throws IOException {
+		debuggerPrinter.println("INT_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeIntArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeBooleanArray(boolean[] array) throws IOException {
+		debuggerPrinter.println("BOOLEAN_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeBooleanArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeCompressedIntArray(int[] array) throws IOException {
+		debuggerPrinter.println("COMPRESSED_INT_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeCompressedIntArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeCompressedLongArray(long[] array) throws IOException {
+		debuggerPrinter.println("COMPRESSED_LONG_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeCompressedLongArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writePackedBooleanArray(boolean[] array) throws IOException {
+		debuggerPrinter.println("PACKED_BOOLEAN_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writePackedBooleanArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeDoubleArray(double[] array) throws IOException {
+		debuggerPrinter.println("DOUBLE_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeDoubleArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeShortArray(short[] array) throws IOException {
+		debuggerPrinter.println("SHORT_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeShortArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeLongArray(long[] array) throws IOException {
+		debuggerPrinter.println("LONG_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeLongArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeCharArray(char[] array) throws IOException {
+		debuggerPrinter.println("CHAR_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeCharArray(array);
+		debuggerPrinter.unpause();
+	}
+	
+	@Override
+	public void writeByteArray(byte[] array) throws IOException {
+		debuggerPrinter.println("BYTE_ARRAY: "+Arrays.toString(array));
+		debuggerPrinter.pause();
+		super.writeByteArray(array);
+		debuggerPrinter.unpause();
+	}
+	
 	@Override
 	public <T> void write(ISerializer<T> serializer, T object) throws IOException {
 		debuggerPrinter.println("SERIALIZE: "+objectToString(object)+"{");
@@ -0,0 +1,109 @@
+package net.pointlessgames.libs.bps.nested;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The table behind {@link InnerTypeRegistry}, and through it
+ * {@link net.pointlessgames.libs.bps.SmallTypeRegistry}. Type ids fit in a byte and index
+ * a fixed array of 256 slots, and the entry of each class is cached in a {@link ClassValue}. The
+ * <code>null</code> type is a type like any other. Immutable; registering returns a
+ * modified copy.
+ * @param <T> the common supertype of all registered types
+ * @param <V> the serializer type
+ */
+/*package-protected*/ final class ByteTypeTable<T, V> {
+	static final class Entry<T, V> {
+		private final byte id;
+		private final Class<? extends T> type;
+		private final V value;
+
+		private Entry(byte id, Class<? extends T> type, V value) {
+			this.id = id;
+			this.type = type;
+			this.value = value;
+		}
+		
+		public byte getId() {
+			return id;
+		}
+		
+		/**
+		 * @return the registered type, or <code>null</code> for the null type.
+		 */
+		public Class<? extends T> getType() {
+			return type;
+		}
+		
+		public V getValue() {
+			return value;
+		}
+	}
+	
+	private static final ByteTypeTable<?, ?> EMPTY = new ByteTypeTable<>(new Entry<?, ?>[256], new HashMap<>(), null);
+	
+	private final Entry<T, V>[] entriesById;
+	private final Map<Class<?>, Entry<T, V>> entriesByType;
+	private final Entry<T, V> nullEntry;
+	private final ClassValue<Entry<T, V>> entryCache = new ClassValue<Entry<T, V>>() {
+		@Override
+		protected Entry<T, V> computeValue(Class<?> type) {
+			return entriesByType.get(type);
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	private ByteTypeTable(Entry<?, ?>[] entriesById, Map<Class<?>, Entry<T, V>> entriesByType, Entry<T, V> nullEntry) {
+		this.entriesById = (Entry<T, V>[]) entriesById;
+		this.entriesByType = entriesByType;
+		this.nullEntry = nullEntry;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T, V> ByteTypeTable<T, V> empty() {
+		return (ByteTypeTable<T, V>) EMPTY;
+	}
+	
+	/**
+	 * @param id in range [0, 255]
+	 * @param type the type, or <code>null</code> for the null type
+	 * @return a copy of this table with the type registered
+	 */
+	public ByteTypeTable<T, V> with(int id, Class<? extends T> type, V value) {
+		if(id < 0 || id > 255) {
+			throw new IllegalArgumentException("Ids must be in range [0, 255] (was " + id + ")");
+		}
+		Entry<T, V> entry = new Entry<>((byte) id, type, value);
+		Entry<?, ?>[] entriesById = this.entriesById.clone();
+		entriesById[id] = entry;
+		if(type == null) {
+			return new ByteTypeTable<>(entriesById, entriesByType, entry);
+		}
+		Map<Class<?>, Entry<T, V>> entriesByType = new HashMap<>(this.entriesByType);
+		entriesByType.put(type, entry);
+		return new ByteTypeTable<>(entriesById, entriesByType, nullEntry);
+	}
+	
+	/**
+	 * @param type the type, or <code>null</code> for the null type
+	 * @throws IllegalArgumentException if the type is not registered
+	 */
+	public Entry<T, V> getEntry(Class<?> type) {
+		Entry<T, V> entry = type != null ? entryCache.get(type) : nullEntry;
+		if(entry == null) {
+			throw new IllegalArgumentException("No serializer registered for type "+(type == null ? "nullType" : type.getName()));
+		}
+		return entry;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if nothing is registered for the id
+	 */
+	public Entry<T, V> getEntry(byte id) {
+		Entry<T, V> entry = entriesById[id & 0xFF];
+		if(entry == null) {
+			throw new IllegalArgumentException("No class registered for id "+id);
+		}
+		return entry;
+	}
+}
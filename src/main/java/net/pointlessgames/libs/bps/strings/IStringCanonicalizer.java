@@ -0,0 +1,18 @@
+package net.pointlessgames.libs.bps.strings;
+
+/**
+ * Maps equal strings to one shared instance, so that data loaded repeatedly does not
+ * keep many copies of the same string alive. Implementations must be thread safe.
+ */
+@FunctionalInterface
+public interface IStringCanonicalizer {
+	/**
+	 * Uses the JVM wide string pool. Entries are never evicted explicitly.
+	 */
+	IStringCanonicalizer INTERN = String::intern;
+
+	/**
+	 * @return a string equal to <code>value</code>, preferably one returned before.
+	 */
+	String canonicalize(String value);
+}
@@ -0,0 +1,36 @@
+package net.pointlessgames.libs.bps.strings;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Strongly keeps the <code>maxEntries</code> most recently used strings.
+ * Older strings are evicted, and are canonicalized again on their next use.
+ */
+public class LRUStringCanonicalizer implements IStringCanonicalizer {
+	private final Map<String, String> canonical;
+
+	public LRUStringCanonicalizer(int maxEntries) {
+		if(maxEntries <= 0) {
+			throw new IllegalArgumentException("Max entries must be positive (was "+maxEntries+")");
+		}
+		this.canonical = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	@Override
+	public synchronized String canonicalize(String value) {
+		String existing = canonical.putIfAbsent(value, value);
+		return existing != null ? existing : value;
+	}
+
+	public synchronized int size() {
+		return canonical.size();
+	}
+}
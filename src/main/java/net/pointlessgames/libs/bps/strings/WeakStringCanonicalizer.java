@@ -0,0 +1,41 @@
+package net.pointlessgames.libs.bps.strings;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps canonical strings only as long as something else references them.
+ * At most <code>maxEntries</code> strings are tracked; when full, new strings are
+ * returned as they are until the garbage collector frees up entries.
+ */
+public class WeakStringCanonicalizer implements IStringCanonicalizer {
+	private final int maxEntries;
+	private final Map<String, WeakReference<String>> canonical = new WeakHashMap<>();
+
+	public WeakStringCanonicalizer(int maxEntries) {
+		if(maxEntries <= 0) {
+			throw new IllegalArgumentException("Max entries must be positive (was "+maxEntries+")");
+		}
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public synchronized String canonicalize(String value) {
+		WeakReference<String> reference = canonical.get(value);
+		if(reference != null) {
+			String existing = reference.get();
+			if(existing != null) {
+				return existing;
+			}
+		}
+		if(canonical.size() < maxEntries) {
+			canonical.put(value, new WeakReference<>(value));
+		}
+		return value;
+	}
+
+	public synchronized int size() {
+		return canonical.size();
+	}
+}
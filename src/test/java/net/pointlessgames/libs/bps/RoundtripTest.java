@@ -2,13 +2,21 @@ package net.pointlessgames.libs.bps;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
@@ -16,8 +24,28 @@ import java.util.function.Supplier;
 import org.junit.Assert;
 import org.junit.Test;
 
+import net.pointlessgames.libs.bps.data.BufferedDataReader;
+import net.pointlessgames.libs.bps.data.BufferedDataWriter;
+import net.pointlessgames.libs.bps.data.ByteArrayDataReader;
+import net.pointlessgames.libs.bps.data.ByteArrayDataWriter;
+import net.pointlessgames.libs.bps.data.ByteBufferDataReader;
+import net.pointlessgames.libs.bps.data.ByteBufferDataWriter;
+import net.pointlessgames.libs.bps.data.ByteBufferPool;
+import net.pointlessgames.libs.bps.data.GrowableByteBufferDataWriter;
+import net.pointlessgames.libs.bps.data.IDataReader;
+import net.pointlessgames.libs.bps.data.IDataWriter;
+import net.pointlessgames.libs.bps.data.InputStreamDataReader;
+import net.pointlessgames.libs.bps.data.IntegerArrayCodec;
+import net.pointlessgames.libs.bps.data.LegacyStringDataReader;
+import net.pointlessgames.libs.bps.data.LegacyStringFormat;
+import net.pointlessgames.libs.bps.data.MappedFileDataReader;
+import net.pointlessgames.libs.bps.data.OutputStreamDataWriter;
+import net.pointlessgames.libs.bps.data.XorFloatingPointCodec;
 import net.pointlessgames.libs.bps.nested.IInnerType;
 import net.pointlessgames.libs.bps.nested.IOuterType;
+import net.pointlessgames.libs.bps.strings.IStringCanonicalizer;
+import net.pointlessgames.libs.bps.strings.LRUStringCanonicalizer;
+import net.pointlessgames.libs.bps.strings.WeakStringCanonicalizer;
 
 
 public class RoundtripTest {
@@ -315,6 +343,1292 @@ public class RoundtripTest {
 		Assert.assertEquals("Natalie's left arm", weirdo.rightArm.getHeld().get().describe());
 	}
 	
+	@Test
+	public void testBufferedWriterMatchesStreamWriter() throws IOException {
+		ByteArrayOutputStream unbuffered = new ByteArrayOutputStream();
+		ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+		writePrimitives(new SerializationContext(new OutputStreamDataWriter(unbuffered), new TypeRegistry()));
+		writePrimitives(new SerializationContext(new BufferedDataWriter(buffered, 16), new TypeRegistry()));
+		Assert.assertArrayEquals(unbuffered.toByteArray(), buffered.toByteArray());
+		
+		readPrimitives(new DeserializationContext(new ByteArrayInputStream(buffered.toByteArray()), new TypeRegistry()));
+	}
+	
+	@Test
+	public void testBufferedReader() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writePrimitives(new SerializationContext(baos, new TypeRegistry()));
+		readPrimitives(new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), new TypeRegistry(), 16));
+		readPrimitives(new DeserializationContext(new BufferedDataReader(new ByteArrayInputStream(baos.toByteArray()), 1024), new TypeRegistry()));
+	}
+	
+	@Test
+	public void testGrowableByteBufferWriter() throws IOException {
+		ByteBuffer fixed = ByteBuffer.allocate(1 << 16);
+		writePrimitives(new SerializationContext(new ByteBufferDataWriter(fixed), new TypeRegistry()));
+		fixed.flip();
+		byte[] expected = new byte[fixed.remaining()];
+		fixed.get(expected);
+		
+		for(boolean direct : new boolean[] {false, true}) {
+			ByteBufferPool pool = new ByteBufferPool(7, 1000, direct);
+			GrowableByteBufferDataWriter writer = new GrowableByteBufferDataWriter(pool);
+			ByteBuffer[] views = null;
+			for(int i = 0; i < 2; ++i) {
+				writePrimitives(new SerializationContext(writer, new TypeRegistry()));
+				Assert.assertEquals(expected.length, writer.size());
+				Assert.assertArrayEquals(expected, writer.toByteArray());
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				writer.writeTo(baos);
+				Assert.assertArrayEquals(expected, baos.toByteArray());
+				ByteArrayOutputStream sent = new ByteArrayOutputStream();
+				writer.writeTo(Channels.newChannel(sent));
+				writer.writeTo(Channels.newChannel(sent));
+				byte[] twice = sent.toByteArray();
+				Assert.assertArrayEquals(expected, Arrays.copyOfRange(twice, 0, expected.length));
+				Assert.assertArrayEquals(expected, Arrays.copyOfRange(twice, expected.length, twice.length));
+				// Later sends get the pooled chunks back in order, so the views are reused
+				ByteBuffer[] buffers = writer.getBuffers();
+				if(views != null) {
+					Assert.assertSame(buffers, writer.getBuffers());
+					for(int b = 0; b < buffers.length; ++b) {
+						Assert.assertSame(views[b], buffers[b]);
+					}
+				}
+				views = buffers.clone();
+				readPrimitives(new DeserializationContext(new ByteBufferDataReader(ByteBuffer.wrap(writer.toByteArray())), new TypeRegistry()));
+				writer.release();
+				Assert.assertEquals(0, writer.size());
+			}
+			Assert.assertEquals((expected.length + 6) / 7, pool.getPooledCount());
+		}
+	}
+	
+	@Test
+	public void testMappedFileReader() throws IOException {
+		GrowableByteBufferDataWriter writer = new GrowableByteBufferDataWriter(new ByteBufferPool(1024, 0, false));
+		writePrimitives(new SerializationContext(writer, new TypeRegistry()));
+		Path file = Files.createTempFile("bps", ".bin");
+		try {
+			Files.write(file, writer.toByteArray());
+			for(int segmentSize : new int[] {3, 7, 4096, MappedFileDataReader.DEFAULT_SEGMENT_SIZE}) {
+				try(MappedFileDataReader reader = new MappedFileDataReader(file, segmentSize)) {
+					readPrimitives(new DeserializationContext(reader, new TypeRegistry()));
+					Assert.assertEquals(reader.size(), reader.position());
+					expectException(() -> reader.readByte(), EOFException.class);
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testPrimitiveArrays() throws IOException {
+		ByteArrayOutputStream unbuffered = new ByteArrayOutputStream();
+		writeArrays(new SerializationContext(new OutputStreamDataWriter(unbuffered), new TypeRegistry()));
+		ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+		writeArrays(new SerializationContext(new BufferedDataWriter(buffered, 29), new TypeRegistry()));
+		Assert.assertArrayEquals(unbuffered.toByteArray(), buffered.toByteArray());
+		
+		readArrays(new DeserializationContext(new ByteArrayInputStream(unbuffered.toByteArray()), new TypeRegistry()));
+		readArrays(new DeserializationContext(new ByteArrayInputStream(unbuffered.toByteArray()), new TypeRegistry(), 29));
+		
+		ByteBuffer fixed = ByteBuffer.allocate(1 << 20);
+		writeArrays(new SerializationContext(new ByteBufferDataWriter(fixed), new TypeRegistry()));
+		fixed.flip();
+		GrowableByteBufferDataWriter growable = new GrowableByteBufferDataWriter(new ByteBufferPool(29, 0, true));
+		writeArrays(new SerializationContext(growable, new TypeRegistry()));
+		Assert.assertEquals(fixed, ByteBuffer.wrap(growable.toByteArray()));
+		
+		readArrays(new DeserializationContext(new ByteBufferDataReader(fixed), new TypeRegistry()));
+		Path file = Files.createTempFile("bps", ".bin");
+		try {
+			Files.write(file, growable.toByteArray());
+			try(MappedFileDataReader reader = new MappedFileDataReader(file, 29)) {
+				readArrays(new DeserializationContext(reader, new TypeRegistry()));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	private static final int ARRAY_LENGTH = 1000;
+	
+	private static void writeArrays(SerializationContext context) throws IOException {
+		byte[] bytes = new byte[ARRAY_LENGTH];
+		boolean[] booleans = new boolean[ARRAY_LENGTH];
+		short[] shorts = new short[ARRAY_LENGTH];
+		char[] chars = new char[ARRAY_LENGTH];
+		int[] ints = new int[ARRAY_LENGTH];
+		long[] longs = new long[ARRAY_LENGTH];
+		float[] floats = new float[ARRAY_LENGTH];
+		double[] doubles = new double[ARRAY_LENGTH];
+		for(int i = 0; i < ARRAY_LENGTH; ++i) {
+			bytes[i] = (byte) (i * 7);
+			booleans[i] = i % 3 == 0;
+			shorts[i] = (short) (i * 977);
+			chars[i] = (char) (i * 131);
+			ints[i] = INTERESTING_INTS[i % INTERESTING_INTS.length] ^ i;
+			longs[i] = i * 0x123456789L;
+			floats[i] = i * 0.25f;
+			doubles[i] = i / 3.0;
+		}
+		context.writeByteArray(bytes);
+		context.writeBooleanArray(booleans);
+		context.writeShortArray(shorts);
+		context.writeCharArray(chars);
+		context.writeIntArray(ints);
+		context.writeLongArray(longs);
+		context.writeFloatArray(floats);
+		context.writeDoubleArray(doubles);
+		context.writeIntArray(new int[0]);
+		context.flush();
+	}
+	
+	private static void readArrays(IDeserializationContext context) throws IOException {
+		byte[] bytes = context.readByteArray();
+		boolean[] booleans = context.readBooleanArray();
+		short[] shorts = context.readShortArray();
+		char[] chars = context.readCharArray();
+		int[] ints = context.readIntArray();
+		long[] longs = context.readLongArray();
+		float[] floats = context.readFloatArray();
+		double[] doubles = context.readDoubleArray();
+		for(int i = 0; i < ARRAY_LENGTH; ++i) {
+			Assert.assertEquals((byte) (i * 7), bytes[i]);
+			Assert.assertEquals(i % 3 == 0, booleans[i]);
+			Assert.assertEquals((short) (i * 977), shorts[i]);
+			Assert.assertEquals((char) (i * 131), chars[i]);
+			Assert.assertEquals(INTERESTING_INTS[i % INTERESTING_INTS.length] ^ i, ints[i]);
+			Assert.assertEquals(i * 0x123456789L, longs[i]);
+			Assert.assertEquals(i * 0.25f, floats[i], 0f);
+			Assert.assertEquals(i / 3.0, doubles[i], 0);
+		}
+		Assert.assertEquals(0, context.readIntArray().length);
+	}
+	
+	@Test
+	public void testStringFormat() throws IOException {
+		String huge = String.join("", Collections.nCopies(30000, "\u00e5\u2603"));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext streamContext = new SerializationContext(baos, new TypeRegistry());
+		streamContext.writeString(huge);
+		streamContext.flush();
+		byte[] streamBytes = baos.toByteArray();
+		ByteBuffer buffer = ByteBuffer.allocate(streamBytes.length);
+		new SerializationContext(new ByteBufferDataWriter(buffer), new TypeRegistry()).writeString(huge);
+		Assert.assertArrayEquals(streamBytes, buffer.array());
+		Assert.assertEquals(huge, new DeserializationContext(new ByteBufferDataReader(ByteBuffer.wrap(streamBytes)), new TypeRegistry()).readString());
+		Assert.assertEquals(huge, new DeserializationContext(new ByteArrayInputStream(streamBytes), new TypeRegistry(), 64).readString());
+		
+		ByteArrayOutputStream legacyStream = new ByteArrayOutputStream();
+		DataOutputStream dataOutputStream = new DataOutputStream(legacyStream);
+		dataOutputStream.writeUTF("Hello \u0000 w\u00f6rld \u2603!");
+		dataOutputStream.writeInt(5);
+		IDataReader legacyStreamReader = new LegacyStringDataReader(new InputStreamDataReader(new ByteArrayInputStream(legacyStream.toByteArray())), LegacyStringFormat.DATA_STREAM);
+		Assert.assertEquals("Hello \u0000 w\u00f6rld \u2603!", legacyStreamReader.readUTF());
+		Assert.assertEquals(5, legacyStreamReader.readInt());
+		
+		byte[] utf8 = "Hello \u0000 w\u00f6rld \u2603!".getBytes(StandardCharsets.UTF_8);
+		ByteBuffer legacyBuffer = ByteBuffer.allocate(utf8.length + 8);
+		legacyBuffer.putInt(utf8.length).put(utf8).putInt(5).flip();
+		IDataReader legacyBufferReader = new LegacyStringDataReader(new ByteBufferDataReader(legacyBuffer), LegacyStringFormat.BYTE_BUFFER);
+		Assert.assertEquals("Hello \u0000 w\u00f6rld \u2603!", legacyBufferReader.readUTF());
+		Assert.assertEquals(5, legacyBufferReader.readInt());
+	}
+
+	@Test
+	public void testStringEncoding() throws IOException {
+		String pairs = String.join("", Collections.nCopies(2000, "a\ud83d\ude00"));
+		String[] strings = {"", "plain ascii", "\u00e5\u00e4\u00f6 latin", "\u2603\uffff", "\ud83d\ude00", pairs, pairs.substring(1), LONG_STRING};
+		String[] unpaired = {"\ud83d", "x\ude00y", "\ud83d\ud83d\ude00", "end\ud83d"};
+		
+		for(String string : unpaired) {
+			byte[] expected = string.getBytes(StandardCharsets.UTF_8);
+			for(byte[] data : encodeWithEveryWriter(string)) {
+				IDataReader reader = new ByteBufferDataReader(ByteBuffer.wrap(data));
+				byte[] actual = new byte[reader.readVarInt()];
+				reader.readBytes(actual, 0, actual.length);
+				Assert.assertArrayEquals(expected, actual);
+			}
+		}
+		String[] replaced = {"?", "x?y", "?\ud83d\ude00", "end?"};
+		for(byte[] data : encodeWithEveryWriter(unpaired)) {
+			IDataReader reader = new ByteBufferDataReader(ByteBuffer.wrap(data));
+			for(String string : replaced) {
+				Assert.assertEquals(string, reader.readUTF());
+			}
+		}
+		
+		for(byte[] data : encodeWithEveryWriter(strings)) {
+			ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+			direct.put(data).flip();
+			Path file = Files.createTempFile("bps", ".bin");
+			try {
+				Files.write(file, data);
+				try(MappedFileDataReader mapped = new MappedFileDataReader(file, 5)) {
+					IDataReader[] readers = {
+						new InputStreamDataReader(new ByteArrayInputStream(data)),
+						new BufferedDataReader(new ByteArrayInputStream(data), 16),
+						new ByteBufferDataReader(ByteBuffer.wrap(data)),
+						new ByteBufferDataReader(direct),
+						mapped,
+					};
+					for(IDataReader reader : readers) {
+						for(String string : strings) {
+							Assert.assertEquals(string, reader.readUTF());
+						}
+					}
+				}
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+	
+	@Test
+	public void testOversizedStringLength() throws IOException {
+		byte[] data = {(byte) 0xF0, 0x50, 0, 0, 0, 'a', 'b'};
+		Path file = Files.createTempFile("bps", ".bin");
+		try {
+			Files.write(file, data);
+			try(MappedFileDataReader mapped = new MappedFileDataReader(file, 5)) {
+				IDataReader[] readers = {
+					new InputStreamDataReader(new ByteArrayInputStream(data)),
+					new BufferedDataReader(new ByteArrayInputStream(data), 16),
+					mapped,
+				};
+				for(IDataReader reader : readers) {
+					expectException(reader::readUTF, IOException.class);
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testStringDeduplication() throws IOException {
+		String[] tags = {"assets/textures/grass.png", "", "\u2603", "assets/textures/grass.png", LONG_STRING, "", LONG_STRING, "\u2603"};
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		ByteArrayOutputStream deduplicated = new ByteArrayOutputStream();
+		SerializationContext plainContext = new SerializationContext(plain, new TypeRegistry());
+		SerializationContext deduplicatedContext = new SerializationContext(deduplicated, new TypeRegistry());
+		deduplicatedContext.setStringDeduplication(true);
+		for(int i = 0; i < 100; ++i) {
+			for(String tag : tags) {
+				plainContext.writeString(tag);
+				deduplicatedContext.writeString(tag);
+			}
+		}
+		plainContext.flush();
+		deduplicatedContext.flush();
+		Assert.assertTrue(deduplicated.size() * 10 < plain.size());
+		
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(deduplicated.toByteArray()), new TypeRegistry());
+		context.setStringDeduplication(true);
+		String[] firstRound = new String[tags.length];
+		for(int i = 0; i < 100; ++i) {
+			for(int j = 0; j < tags.length; ++j) {
+				String tag = context.readString();
+				Assert.assertEquals(tags[j], tag);
+				if(i == 0) {
+					firstRound[j] = tag;
+				} else {
+					Assert.assertSame(firstRound[j], tag);
+				}
+			}
+		}
+		
+		expectException(() -> {
+			DeserializationContext invalid = new DeserializationContext(new ByteArrayInputStream(new byte[] {1}), new TypeRegistry());
+			invalid.setStringDeduplication(true);
+			invalid.readString();
+		}, IOException.class);
+	}
+	
+	@Test
+	public void testStringCanonicalization() throws IOException {
+		LRUStringCanonicalizer lru = new LRUStringCanonicalizer(2);
+		String a = new String("a");
+		Assert.assertSame(a, lru.canonicalize(a));
+		Assert.assertSame(a, lru.canonicalize(new String("a")));
+		lru.canonicalize("b");
+		lru.canonicalize(new String("a"));
+		lru.canonicalize("c");
+		Assert.assertEquals(2, lru.size());
+		Assert.assertSame(a, lru.canonicalize(new String("a")));
+		String b = new String("b");
+		Assert.assertSame(b, lru.canonicalize(b));
+		
+		WeakStringCanonicalizer weak = new WeakStringCanonicalizer(1);
+		Assert.assertSame(a, weak.canonicalize(a));
+		Assert.assertSame(a, weak.canonicalize(new String("a")));
+		Assert.assertSame(b, weak.canonicalize(b));
+		Assert.assertEquals(1, weak.size());
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, new TypeRegistry());
+		for(int i = 0; i < 2; ++i) {
+			serializationContext.writeString("player");
+			serializationContext.writeString("snapshot");
+		}
+		serializationContext.flush();
+		IStringCanonicalizer canonicalizer = new LRUStringCanonicalizer(100);
+		String[][] loads = new String[2][];
+		for(int load = 0; load < loads.length; ++load) {
+			DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), new TypeRegistry());
+			context.setStringCanonicalizer(canonicalizer);
+			loads[load] = new String[] {context.readString(), context.readString(), context.readString(), context.readString()};
+		}
+		for(String[] strings : loads) {
+			Assert.assertSame(loads[0][0], strings[0]);
+			Assert.assertSame(loads[0][0], strings[2]);
+			Assert.assertSame(loads[0][1], strings[1]);
+			Assert.assertSame(loads[0][1], strings[3]);
+		}
+	}
+	
+	@Test
+	public void testCompactPrimitives() throws IOException {
+		List<Long> longs = new ArrayList<>();
+		for(int bit = 0; bit < 64; ++bit) {
+			longs.add(1L << bit);
+			longs.add((1L << bit) - 1);
+			longs.add(-(1L << bit));
+			longs.add(-(1L << bit) - 1);
+		}
+		ByteArrayOutputStream unbuffered = new ByteArrayOutputStream();
+		ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+		for(SerializationContext context : Arrays.asList(new SerializationContext(new OutputStreamDataWriter(unbuffered), new TypeRegistry()), new SerializationContext(buffered, new TypeRegistry()))) {
+			context.setCompactPrimitives(true);
+			for(long l : longs) {
+				context.writeLong(l);
+			}
+			context.writeShort(Short.MIN_VALUE);
+			context.writeShort((short) -1);
+			context.writeChar('A');
+			context.writeChar(Character.MAX_VALUE);
+			context.flush();
+		}
+		Assert.assertArrayEquals(unbuffered.toByteArray(), buffered.toByteArray());
+		
+		byte[] data = buffered.toByteArray();
+		for(DeserializationContext context : Arrays.asList(new DeserializationContext(new ByteArrayInputStream(data), new TypeRegistry()), new DeserializationContext(new ByteArrayInputStream(data), new TypeRegistry(), 16))) {
+			context.setCompactPrimitives(true);
+			for(long l : longs) {
+				Assert.assertEquals(l, context.readLong());
+			}
+			Assert.assertEquals(Short.MIN_VALUE, context.readShort());
+			Assert.assertEquals((short) -1, context.readShort());
+			Assert.assertEquals('A', context.readChar());
+			Assert.assertEquals(Character.MAX_VALUE, context.readChar());
+		}
+		
+		ByteArrayOutputStream small = new ByteArrayOutputStream();
+		SerializationContext context = new SerializationContext(small, new TypeRegistry());
+		context.setCompactPrimitives(true);
+		context.writeLong(-64);
+		context.writeLong(63);
+		context.writeLong(1000);
+		context.flush();
+		Assert.assertArrayEquals(new byte[] {127, 126, (byte) 0b10000111, (byte) 0b11010000}, small.toByteArray());
+	}
+	
+	@Test
+	public void testPackedBooleans() throws IOException {
+		ISerializer<Optional<String>[]> sparseRecord = new ISerializer<Optional<String>[]>() {
+			@Override
+			public Optional<String>[] deserialize(IDeserializationContext context) throws IOException {
+				@SuppressWarnings({"unchecked", "rawtypes"})
+				Optional<String>[] fields = new Optional[10];
+				PresenceBitmap presence = PresenceBitmap.read(context, fields.length);
+				for(int i = 0; i < fields.length; ++i) {
+					fields[i] = presence.get(i) ? Optional.of(context.readString()) : Optional.empty();
+				}
+				return fields;
+			}
+			
+			@Override
+			public void serialize(ISerializationContext context, Optional<String>[] object) throws IOException {
+				PresenceBitmap presence = new PresenceBitmap(object.length);
+				for(int i = 0; i < object.length; ++i) {
+					presence.set(i, object[i]);
+				}
+				presence.write(context);
+				for(Optional<String> field : object) {
+					if(field.isPresent()) {
+						context.writeString(field.get());
+					}
+				}
+			}
+		};
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Optional<String>[] record = new Optional[10];
+		Arrays.fill(record, Optional.empty());
+		record[3] = Optional.of("three");
+		record[9] = Optional.of("nine");
+		
+		for(int length : new int[] {0, 1, 7, 8, 9, 1001}) {
+			boolean[] booleans = new boolean[length];
+			for(int i = 0; i < length; ++i) {
+				booleans[i] = Integer.bitCount(i) % 2 == 1;
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			SerializationContext serializationContext = new SerializationContext(baos, new TypeRegistry());
+			serializationContext.write(Serializers.PACKED_BOOLEAN_ARRAY, booleans);
+			serializationContext.flush();
+			Assert.assertEquals(2 + (length > 63 ? 1 : 0) + (length + 7) / 8, baos.size());
+			serializationContext.write(sparseRecord, record);
+			serializationContext.flush();
+			
+			DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), new TypeRegistry());
+			Assert.assertArrayEquals(booleans, context.read(Serializers.PACKED_BOOLEAN_ARRAY));
+			Assert.assertArrayEquals(record, context.read(sparseRecord));
+		}
+		
+		PresenceBitmap presence = new PresenceBitmap(3).set(0, true).setNonNull(1, null).set(2, Optional.of(1));
+		Assert.assertTrue(presence.get(0));
+		Assert.assertFalse(presence.get(1));
+		Assert.assertTrue(presence.get(2));
+		Assert.assertFalse(presence.set(0, false).get(0));
+		expectException(() -> presence.get(3), IndexOutOfBoundsException.class);
+	}
+	
+	@Test
+	public void testCompressedIntegerArrays() throws IOException {
+		int[] sortedIds = new int[1000];
+		int[] tiles = new int[1000];
+		int[] runs = new int[1000];
+		int[] noise = new int[1000];
+		Random random = new Random(42);
+		for(int i = 0; i < 1000; ++i) {
+			sortedIds[i] = 1000000 + i * 3 + random.nextInt(3);
+			tiles[i] = 500 + random.nextInt(16);
+			runs[i] = i / 250;
+			noise[i] = random.nextInt();
+		}
+		Assert.assertEquals(IntegerArrayCodec.DELTA_PACKED, IntegerArrayCodec.encode(sortedIds)[0]);
+		Assert.assertEquals(IntegerArrayCodec.PACKED, IntegerArrayCodec.encode(tiles)[0]);
+		Assert.assertEquals(IntegerArrayCodec.RUN_LENGTH, IntegerArrayCodec.encode(runs)[0]);
+		Assert.assertEquals(IntegerArrayCodec.VARINT, IntegerArrayCodec.encode(new int[] {1, -1, 2})[0]);
+		Assert.assertEquals(IntegerArrayCodec.DELTA, IntegerArrayCodec.encode(new long[] {0, 1L << 40, (1L << 40) + 1, (1L << 40) + 2, (1L << 40) + 100, (1L << 40) - 50})[0]);
+		Assert.assertTrue(IntegerArrayCodec.encode(tiles).length < 600);
+		
+		int[][] intArrays = {new int[0], new int[] {Integer.MIN_VALUE}, new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE, 0}, sortedIds, tiles, runs, noise};
+		long[][] longArrays = {new long[0], new long[] {Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE}, new long[] {Long.MAX_VALUE, Long.MIN_VALUE, 0, -1}, new long[] {7, 7, 7, 7, 7}};
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, new TypeRegistry());
+		for(int[] array : intArrays) {
+			serializationContext.write(Serializers.COMPRESSED_INT_ARRAY, array);
+		}
+		for(long[] array : longArrays) {
+			serializationContext.write(Serializers.COMPRESSED_LONG_ARRAY, array);
+		}
+		serializationContext.flush();
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), new TypeRegistry());
+		for(int[] array : intArrays) {
+			Assert.assertArrayEquals(array, context.read(Serializers.COMPRESSED_INT_ARRAY));
+		}
+		for(long[] array : longArrays) {
+			Assert.assertArrayEquals(array, context.read(Serializers.COMPRESSED_LONG_ARRAY));
+		}
+		
+		expectException(() -> IntegerArrayCodec.decodeInts(new byte[] {99}, 1), IOException.class);
+		expectException(() -> IntegerArrayCodec.decodeInts(new byte[] {IntegerArrayCodec.VARINT}, 1), IOException.class);
+		expectException(() -> IntegerArrayCodec.decodeInts(new byte[] {IntegerArrayCodec.VARINT}, -1), IOException.class);
+		expectException(() -> IntegerArrayCodec.decodeLongs(new byte[] {IntegerArrayCodec.RUN_LENGTH}, -1), IOException.class);
+		DeserializationContext corrupt = new DeserializationContext(new ByteArrayInputStream(new byte[] {0, 0, 0x7F, 0, 0, 0x7F}), new TypeRegistry());
+		expectException(() -> corrupt.read(Serializers.COMPRESSED_INT_ARRAY), IOException.class);
+		expectException(() -> corrupt.read(Serializers.COMPRESSED_LONG_ARRAY), IOException.class);
+	}
+	
+	@Test
+	public void testXorFloatingPointArrays() throws IOException {
+		double[] curve = new double[1000];
+		float[] telemetry = new float[1000];
+		for(int i = 0; i < curve.length; ++i) {
+			curve[i] = i < 500 ? 20.5 : 20.5 + (i / 100) * 0.25;
+			telemetry[i] = (float) (i / 10) * 0.5f;
+		}
+		double[][] doubleArrays = {new double[0], new double[] {Double.NaN}, new double[] {0.0, -0.0, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.longBitsToDouble(0x7ff8dead0000beefL), Math.PI, Math.E}, curve};
+		float[][] floatArrays = {new float[0], new float[] {Float.MAX_VALUE, Float.MIN_VALUE, -1f, Float.NaN, Float.intBitsToFloat(0xffc00001), 1f}, telemetry};
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, new TypeRegistry());
+		for(double[] array : doubleArrays) {
+			serializationContext.write(Serializers.XOR_DOUBLE_ARRAY, array);
+		}
+		for(float[] array : floatArrays) {
+			serializationContext.write(Serializers.XOR_FLOAT_ARRAY, array);
+		}
+		serializationContext.flush();
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), new TypeRegistry());
+		for(double[] array : doubleArrays) {
+			double[] returned = context.read(Serializers.XOR_DOUBLE_ARRAY);
+			Assert.assertEquals(array.length, returned.length);
+			for(int i = 0; i < array.length; ++i) {
+				Assert.assertEquals(Double.doubleToRawLongBits(array[i]), Double.doubleToRawLongBits(returned[i]));
+			}
+		}
+		for(float[] array : floatArrays) {
+			float[] returned = context.read(Serializers.XOR_FLOAT_ARRAY);
+			Assert.assertEquals(array.length, returned.length);
+			for(int i = 0; i < array.length; ++i) {
+				Assert.assertEquals(Float.floatToRawIntBits(array[i]), Float.floatToRawIntBits(returned[i]));
+			}
+		}
+		
+		Assert.assertTrue(XorFloatingPointCodec.encode(curve).length < curve.length / 2);
+		Assert.assertTrue(XorFloatingPointCodec.encode(telemetry).length < telemetry.length);
+		expectException(() -> XorFloatingPointCodec.decodeDoubles(new byte[4], 1), IOException.class);
+		expectException(() -> XorFloatingPointCodec.decodeDoubles(new byte[0], -1), IOException.class);
+		expectException(() -> XorFloatingPointCodec.decodeFloats(new byte[0], -1), IOException.class);
+		DeserializationContext corrupt = new DeserializationContext(new ByteArrayInputStream(new byte[] {0, 0, 0x7F, 0, 0x7F, 0}), new TypeRegistry());
+		expectException(() -> corrupt.read(Serializers.XOR_DOUBLE_ARRAY), IOException.class);
+		expectException(() -> corrupt.read(Serializers.XOR_FLOAT_ARRAY), IOException.class);
+	}
+	
+	@Test
+	public void testArraySerializationContext() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, Node.class, Node.SERIALIZER);
+		Node a = new Node("a");
+		Node b = new Node("b\u2603");
+		a.children.add(b);
+		b.children.add(a);
+		b.children.add(b);
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext streamContext = new SerializationContext(baos, registry);
+		ArraySerializationContext arrayContext = new ArraySerializationContext(registry, 1);
+		for(SerializationContext context : Arrays.asList(streamContext, arrayContext)) {
+			writePrimitives(context);
+			writeArrays(context);
+			context.writeObject(a);
+			context.writeObject(b);
+			context.setCompactPrimitives(true);
+			context.writeLong(-3);
+			context.writeChar('x');
+			context.flush();
+		}
+		Assert.assertArrayEquals(baos.toByteArray(), arrayContext.toByteArray());
+		Assert.assertEquals(baos.size(), arrayContext.size());
+		
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(arrayContext.toByteArray()), registry);
+		readPrimitives(context);
+		readArrays(context);
+		Node returnedA = new SimplePointer<>(context.readObject(Node.class)).get();
+		Node returnedB = new SimplePointer<>(context.readObject(Node.class)).get();
+		Assert.assertSame(returnedB, returnedA.children.get(0));
+		Assert.assertSame(returnedA, returnedB.children.get(0));
+		Assert.assertEquals("b\u2603", returnedB.data);
+	}
+	
+	@Test
+	public void testArrayDeserializationContext() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, Node.class, Node.SERIALIZER);
+		Node a = new Node("a");
+		a.children.add(a);
+		ArraySerializationContext serializationContext = new ArraySerializationContext(registry);
+		writePrimitives(serializationContext);
+		writeArrays(serializationContext);
+		serializationContext.writeObject(a);
+		serializationContext.setStringDeduplication(true);
+		serializationContext.writeString("again");
+		serializationContext.writeString("again");
+		byte[] data = serializationContext.toByteArray();
+		
+		byte[] padded = new byte[data.length + 10];
+		System.arraycopy(data, 0, padded, 3, data.length);
+		ByteBuffer heap = ByteBuffer.wrap(padded, 3, data.length).slice();
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		List<ArrayDeserializationContext> contexts = Arrays.asList(
+				new ArrayDeserializationContext(data, registry),
+				new ArrayDeserializationContext(padded, 3, data.length, registry),
+				new ArrayDeserializationContext(heap, registry),
+				new ArrayDeserializationContext(direct, registry));
+		for(ArrayDeserializationContext context : contexts) {
+			readPrimitives(context);
+			readArrays(context);
+			Node returned = new SimplePointer<>(context.readObject(Node.class)).get();
+			Assert.assertSame(returned, returned.children.get(0));
+			context.setStringDeduplication(true);
+			Assert.assertSame(context.readString(), context.readString());
+			Assert.assertEquals(0, context.remaining());
+			expectException(context::readInt, EOFException.class);
+		}
+		Assert.assertEquals(0, direct.position());
+	}
+	
+	@Test
+	public void testObjectIdentity() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, SimpleType.class, SimpleType.SERIALIZER);
+		registry.register(1, String.class, Serializers.STRING);
+		registry.registerNull(2);
+		
+		String shared = new String("equal");
+		List<Object> original = new ArrayList<>();
+		original.add(shared);
+		original.add(new String("equal"));
+		original.add(null);
+		original.add(shared);
+		original.add(null);
+		for(int i = 0; i < 1000; ++i) {
+			original.add(new SimpleType(i, i, -i));
+		}
+		original.add(original.get(5 + 500));
+		List<Object> returned = roundtripObjectList(original, registry);
+		
+		Assert.assertEquals(original.size(), returned.size());
+		Assert.assertEquals("equal", returned.get(0));
+		Assert.assertEquals("equal", returned.get(1));
+		Assert.assertNotSame(returned.get(0), returned.get(1));
+		Assert.assertNull(returned.get(2));
+		Assert.assertSame(returned.get(0), returned.get(3));
+		Assert.assertNull(returned.get(4));
+		for(int i = 0; i < 1000; ++i) {
+			SimpleType.assertEquals(new SimpleType(i, i, -i), (SimpleType) returned.get(5 + i));
+		}
+		Assert.assertSame(returned.get(5 + 500), returned.get(returned.size() - 1));
+	}
+	
+	@Test
+	public void testInvalidObjectReference() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, String.class, Serializers.STRING);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, registry);
+		serializationContext.writeObject("first");
+		serializationContext.writeInt(2);
+		serializationContext.flush();
+		
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), registry);
+		Assert.assertEquals("first", new SimplePointer<>(context.readObject(String.class)).get());
+		expectException(() -> context.readObject(String.class), IOException.class);
+	}
+	
+	@Test
+	public void testDeferredLinking() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, Node.class, Node.SERIALIZER);
+		
+		Random random = new Random(42);
+		Node[] nodes = new Node[300];
+		for(int i = 0; i < nodes.length; ++i) {
+			nodes[i] = new Node(Integer.toString(i));
+		}
+		for(Node node : nodes) {
+			for(int i = random.nextInt(4); i > 0; --i) {
+				node.children.add(nodes[random.nextInt(nodes.length)]);
+			}
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, registry);
+		serializationContext.writeObjectArray(nodes);
+		serializationContext.flush();
+		
+		for(boolean deferred : new boolean[] {false, true}) {
+			DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), registry);
+			context.setDeferredLinking(deferred);
+			Node[] returned = context.readObjectArray(Node.class);
+			Assert.assertEquals(nodes.length, returned.length);
+			for(int i = 0; i < nodes.length; ++i) {
+				Assert.assertEquals(nodes[i].data, returned[i].data);
+				Assert.assertEquals(nodes[i].children.size(), returned[i].children.size());
+				for(int j = 0; j < nodes[i].children.size(); ++j) {
+					Assert.assertSame(returned[Integer.parseInt(nodes[i].children.get(j).data)], returned[i].children.get(j));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testContextReuse() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, Node.class, Node.SERIALIZER);
+		ThreadLocalContext<ArraySerializationContext> out = ThreadLocalContext.ofSerialization(() -> new ArraySerializationContext(registry));
+		ThreadLocalContext<ArrayDeserializationContext> in = ThreadLocalContext.ofDeserialization(() -> new ArrayDeserializationContext(new byte[0], registry));
+		
+		out.get().setStringDeduplication(true);
+		in.get().setStringDeduplication(true);
+		Node node = new Node("loop");
+		node.children.add(node);
+		byte[] first = null;
+		for(int i = 0; i < 3; ++i) {
+			ArraySerializationContext serializationContext = out.get();
+			serializationContext.writeString("message");
+			serializationContext.writeObject(node);
+			byte[] data = serializationContext.toByteArray();
+			if(first == null) {
+				first = data;
+			}
+			Assert.assertArrayEquals(first, data);
+			
+			ArrayDeserializationContext context = in.get();
+			context.reset(data);
+			Assert.assertEquals("message", context.readString());
+			Node returned = (Node) new SimplePointer<>(context.readObject(Object.class)).get();
+			Assert.assertEquals("loop", returned.data);
+			Assert.assertSame(returned, returned.children.get(0));
+			Assert.assertEquals(0, context.remaining());
+		}
+		Assert.assertSame(out.get(), out.get());
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(new OutputStreamDataWriter(new ByteArrayOutputStream()), registry);
+		serializationContext.writeObject(node);
+		serializationContext.reset(new OutputStreamDataWriter(baos));
+		serializationContext.writeObject(node);
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(new byte[0]), registry);
+		context.reset(new InputStreamDataReader(new ByteArrayInputStream(baos.toByteArray())));
+		Node returned = (Node) new SimplePointer<>(context.readObject(Object.class)).get();
+		Assert.assertSame(returned, returned.children.get(0));
+	}
+	
+	@Test
+	public void testBreadthFirstObjects() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.registerInnerType(0);
+		registry.register(1, Node.class, Node.SERIALIZER);
+		registry.register(2, Human.class, Human.SERIALIZER);
+		registry.register(3, Book.class, Book.SERIALIZER);
+		
+		Node head = new Node("0");
+		Node tail = head;
+		for(int i = 1; i < 200000; ++i) {
+			Node next = new Node(Integer.toString(i));
+			tail.children.add(next);
+			tail = next;
+		}
+		tail.children.add(head);
+		Human matte = new Human("Matte");
+		Human natalie = new Human("Natalie");
+		matte.grabWithRightArm(natalie.getLeftArm());
+		natalie.grabWithLeftArm(matte.getRightArm());
+		natalie.grabWithRightArm(new Book("Color of magic"));
+		
+		for(boolean deferred : new boolean[] {false, true}) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			SerializationContext serializationContext = new SerializationContext(baos, registry);
+			serializationContext.setBreadthFirstObjects(true);
+			serializationContext.writeObjectList(Arrays.asList(head, matte, natalie));
+			serializationContext.flush();
+			
+			DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), registry);
+			context.setBreadthFirstObjects(true);
+			context.setDeferredLinking(deferred);
+			List<Object> returned = context.readObjectList(Object.class, new ArrayList<>());
+			
+			Node node = (Node) returned.get(0);
+			for(int i = 0; i < 200000; ++i) {
+				Assert.assertEquals(Integer.toString(i), node.data);
+				Assert.assertEquals(1, node.children.size());
+				node = node.children.get(0);
+			}
+			Assert.assertSame(returned.get(0), node);
+			Human returnedMatte = (Human) returned.get(1);
+			Human returnedNatalie = (Human) returned.get(2);
+			Assert.assertEquals("Natalie's left arm", returnedMatte.rightArm.getHeld().get().describe());
+			Assert.assertEquals("Matte's right arm", returnedNatalie.leftArm.getHeld().get().describe());
+			Assert.assertEquals("A book titled Color of magic", returnedNatalie.rightArm.getHeld().get().describe());
+			Assert.assertSame(returnedNatalie, ((Human.Arm) returnedMatte.rightArm.getHeld().get()).getOuterObject());
+		}
+	}
+	
+	@Test
+	public void testTypeRegistryIds() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(-7, String.class, Serializers.STRING);
+		registry.register(1000000, Integer.class, Serializers.INT);
+		registry.register(300, SimpleType.class, SimpleType.SERIALIZER);
+		Assert.assertEquals("negative", roundtripObject("negative", registry));
+		Assert.assertEquals(Integer.valueOf(5), roundtripObject(5, registry));
+		SimpleType.assertEquals(new SimpleType(1, 2f, 3f), roundtripObject(new SimpleType(1, 2f, 3f), registry));
+		
+		expectException(() -> roundtripObject(5L, registry), IllegalArgumentException.class);
+		registry.register(2, Long.class, Serializers.LONG);
+		Assert.assertEquals(Long.valueOf(5), roundtripObject(5L, registry));
+	}
+	
+	@Test
+	public void testFrozenRegistries() throws Exception {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, SimpleType.class, SimpleType.SERIALIZER);
+		registry.register(1, String.class, Serializers.STRING);
+		Assert.assertSame(registry, registry.freeze());
+		Assert.assertTrue(registry.isFrozen());
+		expectException(() -> registry.register(2, Integer.class, Serializers.INT), IllegalStateException.class);
+		
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		for(int t = 0; t < 8; ++t) {
+			final int seed = t;
+			threads.add(new Thread(() -> {
+				try {
+					for(int i = 0; i < 1000; ++i) {
+						SimpleType.assertEquals(new SimpleType(seed, i, -i), roundtripObject(new SimpleType(seed, i, -i), registry));
+						Assert.assertEquals("thread "+seed, roundtripObject("thread "+seed, registry));
+					}
+				} catch(Throwable e) {
+					failures.add(e);
+				}
+			}));
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(Collections.emptyList(), failures);
+		
+		SmallTypeRegistry<Object> smallRegistry = new SmallTypeRegistry<>();
+		smallRegistry.register(0, String.class, Serializers.STRING);
+		smallRegistry.freeze();
+		expectException(() -> smallRegistry.registerNull(1), IllegalStateException.class);
+		Assert.assertEquals("small", roundtripObject("small", smallRegistry));
+	}
+	
+	@Test
+	public void testSmallTypeRegistryIds() throws IOException {
+		SmallTypeRegistry<Object> registry = new SmallTypeRegistry<>();
+		registry.register(0, String.class, Serializers.STRING);
+		registry.register(200, Integer.class, Serializers.INT);
+		registry.registerNull(255);
+		expectException(() -> registry.register(256, Long.class, Serializers.LONG), IllegalArgumentException.class);
+		
+		Assert.assertEquals("zero", roundtripObject("zero", registry));
+		Assert.assertEquals(Integer.valueOf(7), roundtripObject(7, registry));
+		Assert.assertNull(roundtripObject(null, registry));
+		expectException(() -> roundtripObject(7L, registry), IllegalArgumentException.class);
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, registry);
+		serializationContext.writeObject(7);
+		serializationContext.flush();
+		// Object id, serializer version, type id
+		Assert.assertEquals((byte) 200, baos.toByteArray()[2]);
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(new byte[] {0, 0, 17}), registry);
+		expectException(() -> context.readObject(Object.class), IllegalArgumentException.class);
+
+		// Older versions still resolve through the serializer registered for the id
+		SmallTypeRegistry<Object> old = new SmallTypeRegistry<>();
+		old.register(3, Integer.class, versioned(1));
+		SmallTypeRegistry<Object> current = new SmallTypeRegistry<>();
+		current.register(3, Integer.class, versioned(2).with(1, c -> -c.readInt()));
+		ByteArrayOutputStream oldBytes = new ByteArrayOutputStream();
+		SerializationContext oldContext = new SerializationContext(oldBytes, old);
+		oldContext.writeObject(5);
+		oldContext.flush();
+		Assert.assertEquals(Integer.valueOf(-5), new SimplePointer<>(new DeserializationContext(new ByteArrayInputStream(oldBytes.toByteArray()), current).readObject(Integer.class)).get());
+		SmallTypeRegistry<Object> unknown = new SmallTypeRegistry<>();
+		unknown.register(3, Integer.class, versioned(2));
+		expectException(() -> new DeserializationContext(new ByteArrayInputStream(oldBytes.toByteArray()), unknown).readObject(Integer.class), IOException.class);
+	}
+	
+	@Test
+	public void testCompactObjectHeaders() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.registerInnerType(0);
+		registry.registerNull(1);
+		registry.register(2, Node.class, Node.SERIALIZER);
+		registry.register(3, Human.class, Human.SERIALIZER);
+		registry.register(4, Book.class, Book.SERIALIZER);
+		registry.register(5, Integer.class, new ISerializer<Integer>() {
+			@Override
+			public Integer deserialize(IDeserializationContext context) throws IOException {
+				return context.readInt();
+			}
+			
+			@Override
+			public void serialize(ISerializationContext context, Integer object) throws IOException {
+				context.writeInt(object);
+			}
+			
+			@Override
+			public int getVersion() {
+				return 3;
+			}
+		});
+		
+		Node a = new Node("a");
+		Node b = new Node("b");
+		a.children.add(b);
+		a.children.add(a);
+		b.children.add(a);
+		b.children.add(b);
+		Human matte = new Human("Matte");
+		Human natalie = new Human("Natalie");
+		matte.grabWithRightArm(natalie.getLeftArm());
+		natalie.grabWithLeftArm(matte.getRightArm());
+		natalie.grabWithRightArm(new Book("Color of magic"));
+		Integer number = 12345;
+		List<Object> original = Arrays.asList(a, null, matte, number, natalie, null, b, number);
+		
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		SerializationContext plainContext = new SerializationContext(plain, registry);
+		plainContext.writeObjectList(original);
+		plainContext.flush();
+		for(boolean breadthFirst : new boolean[] {false, true}) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			SerializationContext serializationContext = new SerializationContext(baos, registry);
+			serializationContext.setCompactObjectHeaders(true);
+			serializationContext.setBreadthFirstObjects(breadthFirst);
+			serializationContext.writeObjectList(original);
+			serializationContext.flush();
+			Assert.assertTrue(baos.size() < plain.size());
+			
+			DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), registry);
+			context.setCompactObjectHeaders(true);
+			context.setBreadthFirstObjects(breadthFirst);
+			List<Object> returned = context.readObjectList(Object.class, new ArrayList<>());
+			
+			Assert.assertEquals(original.size(), returned.size());
+			Node returnedA = (Node) returned.get(0);
+			Node returnedB = (Node) returned.get(6);
+			Assert.assertEquals("a", returnedA.data);
+			Assert.assertEquals("b", returnedB.data);
+			Assert.assertSame(returnedB, returnedA.children.get(0));
+			Assert.assertSame(returnedA, returnedA.children.get(1));
+			Assert.assertSame(returnedA, returnedB.children.get(0));
+			Assert.assertSame(returnedB, returnedB.children.get(1));
+			Assert.assertNull(returned.get(1));
+			Assert.assertNull(returned.get(5));
+			Assert.assertEquals(Integer.valueOf(12345), returned.get(3));
+			Assert.assertSame(returned.get(3), returned.get(7));
+			Human returnedMatte = (Human) returned.get(2);
+			Human returnedNatalie = (Human) returned.get(4);
+			Assert.assertEquals("Natalie's left arm", returnedMatte.rightArm.getHeld().get().describe());
+			Assert.assertEquals("Matte's right arm", returnedNatalie.leftArm.getHeld().get().describe());
+			Assert.assertEquals("A book titled Color of magic", returnedNatalie.rightArm.getHeld().get().describe());
+		}
+		
+		SmallTypeRegistry<Object> smallRegistry = new SmallTypeRegistry<>();
+		smallRegistry.register(0, String.class, Serializers.STRING);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, smallRegistry);
+		serializationContext.setCompactObjectHeaders(true);
+		String string = "small";
+		serializationContext.writeObjectList(Arrays.asList(string, string));
+		serializationContext.flush();
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), smallRegistry);
+		context.setCompactObjectHeaders(true);
+		List<Object> returned = context.readObjectList(Object.class, new ArrayList<>());
+		Assert.assertEquals("small", returned.get(0));
+		Assert.assertSame(returned.get(0), returned.get(1));
+	}
+	
+	@Test
+	public void testVersionTable() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, Node.class, Node.SERIALIZER);
+		ISerializer<String> oldSerializer = Serializers.STRING;
+		ISerializer<String> newSerializer = new ISerializer<String>() {
+			@Override
+			public String deserialize(IDeserializationContext context) throws IOException {
+				return context.readString()+context.readInt();
+			}
+			
+			@Override
+			public void serialize(ISerializationContext context, String object) throws IOException {
+				throw new UnsupportedOperationException();
+			}
+			
+			@Override
+			public int getVersion() {
+				return 1;
+			}
+		}.with(0, context -> context.readString());
+		List<Integer> numbers = new ArrayList<>();
+		for(int i = 0; i < 1000; ++i) {
+			numbers.add(i % 50);
+		}
+		Node node = new Node("node");
+		node.children.add(node);
+		
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		SerializationContext plainContext = new SerializationContext(plain, registry);
+		plainContext.writeList(Serializers.INT, numbers);
+		plainContext.flush();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, registry);
+		serializationContext.setVersionTable(true);
+		serializationContext.writeList(Serializers.INT, numbers);
+		serializationContext.flush();
+		Assert.assertEquals(plain.size() - numbers.size() + 2, baos.size());
+		serializationContext.write(oldSerializer, "old");
+		serializationContext.write(oldSerializer, "again");
+		serializationContext.writeObject(node);
+		serializationContext.writeList(Serializers.INT, numbers);
+		serializationContext.flush();
+		
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), registry);
+		context.setVersionTable(true);
+		Assert.assertEquals(numbers, context.readList(Serializers.INT, new ArrayList<>()));
+		Assert.assertEquals("old", context.read(newSerializer));
+		Assert.assertEquals("again", context.read(newSerializer));
+		Node returned = (Node) new SimplePointer<>(context.readObject(Object.class)).get();
+		Assert.assertSame(returned, returned.children.get(0));
+		Assert.assertEquals(numbers, context.readList(Serializers.INT, new ArrayList<>()));
+	}
+	
+	@Test
+	public void testVersionTableIgnoresSerializerIdentity() throws IOException {
+		ISerializer<List<Integer>> perCall = new ISerializer<List<Integer>>() {
+			@Override
+			public List<Integer> deserialize(IDeserializationContext context) throws IOException {
+				List<Integer> list = new ArrayList<>();
+				int size = context.readInt();
+				for(int i = 0; i < size; ++i) {
+					list.add(context.read(offset()));
+				}
+				return list;
+			}
+			
+			@Override
+			public void serialize(ISerializationContext context, List<Integer> object) throws IOException {
+				context.writeInt(object.size());
+				for(Integer element : object) {
+					context.write(offset(), element);
+				}
+			}
+			
+			private ISerializer<Integer> offset() {
+				return new ISerializer<Integer>() {
+					@Override
+					public Integer deserialize(IDeserializationContext context) throws IOException {
+						return context.readInt() + 1;
+					}
+					
+					@Override
+					public void serialize(ISerializationContext context, Integer object) throws IOException {
+						context.writeInt(object - 1);
+					}
+					
+					@Override
+					public int getVersion() {
+						return 2;
+					}
+				};
+			}
+		};
+		List<Integer> numbers = Arrays.asList(1, 2, 3);
+		
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		SerializationContext plainContext = new SerializationContext(plain, new TypeRegistry());
+		plainContext.write(perCall, numbers);
+		plainContext.write(perCall, numbers);
+		plainContext.flush();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SerializationContext serializationContext = new SerializationContext(baos, new TypeRegistry());
+		serializationContext.setVersionTable(true);
+		serializationContext.write(perCall, numbers);
+		serializationContext.write(perCall, numbers);
+		serializationContext.flush();
+		// One extra byte for the first occurrence of each of the two versions
+		Assert.assertEquals(plain.size() + 2, baos.size());
+		for(int version = 0; version < 2 * SerializationContext.MAX_VERSION_TABLE_SIZE; ++version) {
+			serializationContext.write(versioned(version), version);
+		}
+		serializationContext.flush();
+		
+		DeserializationContext context = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), new TypeRegistry());
+		context.setVersionTable(true);
+		Assert.assertEquals(numbers, context.read(perCall));
+		Assert.assertEquals(numbers, context.read(perCall));
+		for(int version = 0; version < 2 * SerializationContext.MAX_VERSION_TABLE_SIZE; ++version) {
+			Assert.assertEquals(Integer.valueOf(version), context.read(versioned(version)));
+		}
+	}
+	
+	private static ISerializer<Integer> versioned(int version) {
+		return new ISerializer<Integer>() {
+			@Override
+			public Integer deserialize(IDeserializationContext context) throws IOException {
+				return context.readInt();
+			}
+			
+			@Override
+			public void serialize(ISerializationContext context, Integer object) throws IOException {
+				context.writeInt(object);
+			}
+			
+			@Override
+			public int getVersion() {
+				return version;
+			}
+		};
+	}
+	
+	@Test
+	public void testWritesReachStreamInBlocks() throws IOException {
+		TypeRegistry registry = new TypeRegistry();
+		registry.register(0, String.class, Serializers.STRING);
+		int[] flushes = new int[1];
+		int[] writes = new int[1];
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				writes[0]++;
+				super.write(b, off, len);
+			}
+			
+			@Override
+			public void flush() {
+				flushes[0]++;
+			}
+		};
+		SerializationContext context = new SerializationContext(baos, registry);
+		List<Integer> numbers = new ArrayList<>();
+		for(int i = 0; i < 10000; ++i) {
+			numbers.add(i);
+			context.writeInt(i);
+		}
+		context.writeList(Serializers.INT, numbers);
+		context.writeObjectList(Arrays.asList("a", "b", "c"));
+		context.writeStringArray(new String[] {"a", "b", "c"});
+		context.writeArray(Serializers.INT, new Integer[] {1, 2, 3});
+		context.writeObjectArray(new String[] {"d", "e"});
+		context.writeOptional(Serializers.INT, Optional.of(4));
+		context.writeOptionalObject(Optional.of("f"));
+		Assert.assertEquals(0, flushes[0]);
+		context.flush();
+		Assert.assertEquals(1, flushes[0]);
+		Assert.assertTrue(writes[0] <= baos.size() / BufferedDataWriter.DEFAULT_BUFFER_SIZE + 1);
+		
+		DeserializationContext deserializationContext = new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), registry);
+		for(int i = 0; i < 10000; ++i) {
+			Assert.assertEquals(i, deserializationContext.readInt());
+		}
+		Assert.assertEquals(numbers, deserializationContext.readList(Serializers.INT, new ArrayList<>()));
+		Assert.assertEquals(Arrays.asList("a", "b", "c"), deserializationContext.readObjectList(String.class, new ArrayList<>()));
+		Assert.assertArrayEquals(new String[] {"a", "b", "c"}, deserializationContext.readStringArray());
+		Assert.assertArrayEquals(new Integer[] {1, 2, 3}, deserializationContext.readArray(Serializers.INT, Integer.class));
+		Assert.assertArrayEquals(new String[] {"d", "e"}, deserializationContext.readObjectArray(String.class));
+		Assert.assertEquals(Optional.of(4), deserializationContext.readOptional(Serializers.INT));
+		List<Optional<String>> optional = new ArrayList<>();
+		deserializationContext.readOptionalObject(String.class, optional::add);
+		Assert.assertEquals(Collections.singletonList(Optional.of("f")), optional);
+	}
+	
+	@Test
+	public void testRebindArrayContexts() throws IOException {
+		ArraySerializationContext serializationContext = new ArraySerializationContext(new TypeRegistry());
+		expectException(() -> serializationContext.reset(new OutputStreamDataWriter(new ByteArrayOutputStream())), IllegalArgumentException.class);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writePrimitives(new SerializationContext(baos, new TypeRegistry()));
+		
+		ByteArrayDataWriter writer = new ByteArrayDataWriter();
+		serializationContext.reset(writer);
+		writePrimitives(serializationContext);
+		Assert.assertArrayEquals(baos.toByteArray(), serializationContext.toByteArray());
+		Assert.assertArrayEquals(baos.toByteArray(), writer.toByteArray());
+		
+		ArrayDeserializationContext context = new ArrayDeserializationContext(new byte[0], new TypeRegistry());
+		expectException(() -> context.reset(new InputStreamDataReader(new ByteArrayInputStream(baos.toByteArray()))), IllegalArgumentException.class);
+		context.reset(new ByteArrayDataReader(baos.toByteArray()));
+		readPrimitives(context);
+		Assert.assertEquals(0, context.remaining());
+	}
+	
+	@Test
+	public void testByteArrayDataWriterOverflow() {
+		ByteArrayDataWriter writer = new ByteArrayDataWriter(1);
+		writer.writeByte((byte) 1);
+		expectException(() -> writer.writeLongs(new long[1], 0, Integer.MAX_VALUE / 4), OutOfMemoryError.class);
+		expectException(() -> writer.writeShorts(new short[1], 0, Integer.MAX_VALUE / 2 + 1), OutOfMemoryError.class);
+		Assert.assertEquals(1, writer.size());
+		
+		int[] small = new int[100000];
+		Arrays.fill(small, 63);
+		writer.writeVarInts(small, 0, small.length);
+		Assert.assertEquals(1 + small.length, writer.size());
+	}
+	
+	@Test
+	public void testByteArrayDataReaderOverflow() {
+		ByteArrayDataReader reader = new ByteArrayDataReader(new byte[8]);
+		expectException(() -> reader.readLongs(new long[1], 0, Integer.MAX_VALUE / 4 + 1), EOFException.class);
+		expectException(() -> reader.readShorts(new short[1], 0, Integer.MAX_VALUE / 2 + 1), EOFException.class);
+		expectException(() -> reader.readFloats(new float[1], 0, Integer.MAX_VALUE / 4 + 1), EOFException.class);
+		Assert.assertEquals(8, reader.remaining());
+	}
+	
+	private static List<byte[]> encodeWithEveryWriter(String... strings) throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		writeStrings(new OutputStreamDataWriter(stream), strings);
+		result.add(stream.toByteArray());
+		
+		stream = new ByteArrayOutputStream();
+		BufferedDataWriter buffered = new BufferedDataWriter(stream, 16);
+		writeStrings(buffered, strings);
+		buffered.flush();
+		result.add(stream.toByteArray());
+		
+		for(ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(1 << 16), ByteBuffer.allocateDirect(1 << 16)}) {
+			writeStrings(new ByteBufferDataWriter(buffer), strings);
+			buffer.flip();
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			result.add(bytes);
+		}
+		
+		for(boolean direct : new boolean[] {false, true}) {
+			GrowableByteBufferDataWriter growable = new GrowableByteBufferDataWriter(new ByteBufferPool(7, 0, direct));
+			writeStrings(growable, strings);
+			result.add(growable.toByteArray());
+		}
+		return result;
+	}
+	
+	private static void writeStrings(IDataWriter writer, String... strings) throws IOException {
+		for(String string : strings) {
+			writer.writeUTF(string);
+		}
+	}
+	
+	private static final String LONG_STRING = String.join(" ", Collections.nCopies(200, "Lorem ipsum \u00e5\u00e4\u00f6"));
+	private static final int[] INTERESTING_INTS = {0, 1, -1, 63, -64, 64, -65, 8191, -8192, 8192, 1048575, -1048576, 1048576, 134217727, -134217728, 134217728, Integer.MAX_VALUE, Integer.MIN_VALUE};
+	
+	private static void writePrimitives(SerializationContext context) throws IOException {
+		for(int i : INTERESTING_INTS) {
+			context.writeInt(i);
+		}
+		context.writeLong(Long.MIN_VALUE);
+		context.writeFloat(-0.5f);
+		context.writeDouble(Math.PI);
+		context.writeString("Hello \u0000 w\u00f6rld \u2603!");
+		context.writeBoolean(true);
+		context.writeChar('\u2603');
+		context.writeShort((short) -12345);
+		context.writeByte((byte) -7);
+		context.writeString(LONG_STRING);
+		context.writeIntArray(INTERESTING_INTS);
+		context.flush();
+	}
+	
+	private static void readPrimitives(IDeserializationContext context) throws IOException {
+		for(int i : INTERESTING_INTS) {
+			Assert.assertEquals(i, context.readInt());
+		}
+		Assert.assertEquals(Long.MIN_VALUE, context.readLong());
+		Assert.assertEquals(-0.5f, context.readFloat(), 0f);
+		Assert.assertEquals(Math.PI, context.readDouble(), 0);
+		Assert.assertEquals("Hello \u0000 w\u00f6rld \u2603!", context.readString());
+		Assert.assertTrue(context.readBoolean());
+		Assert.assertEquals('\u2603', context.readChar());
+		Assert.assertEquals((short) -12345, context.readShort());
+		Assert.assertEquals((byte) -7, context.readByte());
+		Assert.assertEquals(LONG_STRING, context.readString());
+		Assert.assertArrayEquals(INTERESTING_INTS, context.readIntArray());
+	}
+	
 	private static <T> T closure(Supplier<T> supplier) {
 		return supplier.get();
 	}
@@ -343,14 +1657,18 @@ public class RoundtripTest {
 	@SuppressWarnings("unchecked")
 	private static <T> List<T> roundtripObjectList(List<T> list, ISerializer<Object> objectSerializer) throws IOException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		new SerializationContext(baos, objectSerializer).writeObjectList(list);
+		SerializationContext context = new SerializationContext(baos, objectSerializer);
+		context.writeObjectList(list);
+		context.flush();
 		return (List<T>) new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), objectSerializer).readObjectList(Object.class, new ArrayList<>());
 	}
 	
 	@SuppressWarnings({"unchecked" })
 	private static <T> T roundtripObject(T object, ISerializer<Object> objectSerializer) throws IOException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		new SerializationContext(baos, objectSerializer).writeObject(object);
+		SerializationContext context = new SerializationContext(baos, objectSerializer);
+		context.writeObject(object);
+		context.flush();
 		return (T) new SimplePointer<>(new DeserializationContext(new ByteArrayInputStream(baos.toByteArray()), objectSerializer).readObject(Object.class)).get();
 	}
 	